@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+// A* with the Chebyshev distance as a heuristic, the SearchAgent's default
+// strategy, or with the tighter landmark heuristic when one is given. The
+// target travels with the query and every node, and the only state kept
+// between queries is this instance's open and closed sets and landmark
+// tables, so separate instances can search in parallel.
+public class AStarSearch implements PathPlanner, MapListener {
+    private static final AgentLog.Site UNREACHABLE = new AgentLog.Site("AStarSearch", Level.INFO, 10);
+    private OpenSet frontier = null;
+    private ClosedSet explored = null;
+    private int expansions = 0;
+    private int generated = 0;
+    private int peakOpenSize = 0;
+    private LandmarkHeuristic landmarks = null;
+
+    public AStarSearch() {
+    }
+
+    public AStarSearch(LandmarkHeuristic landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    // Only the landmark tables depend on the map between queries.
+    @Override
+    public void setCellOpen(int x, int y, boolean open) {
+        if (landmarks != null) {
+            landmarks.setCellOpen(x, y, open);
+        }
+    }
+
+    @Override
+    public List<GraphNode> getPathToTarget(GraphNode map[][], GraphNode initial, GraphNode target) {
+        if (landmarks != null) {
+            landmarks.prepare(map, target);
+        }
+        WeightedNode current = createNode(initial, null, target);
+
+        // Search for the town hall.
+        OpenSet openSet = frontier;
+        if (openSet == null || !openSet.fits(map.length, map[0].length)) {
+            openSet = frontier = new OpenSet(map.length, map[0].length);
+        } else {
+            openSet.clear();
+        }
+        ClosedSet closedSet = explored;
+        if (closedSet == null || !closedSet.fits(map.length, map[0].length)) {
+            closedSet = explored = new ClosedSet(map.length, map[0].length);
+        } else {
+            closedSet.clear();
+        }
+        openSet.add(current);
+        expansions = 0;
+        generated = 1;
+        peakOpenSize = 1;
+
+        while (true) {
+            // Exit search if done.
+            if (openSet.isEmpty()) {
+                UNREACHABLE.log("Target (%d, %d) is unreachable from position (%d, %d).",
+                                target.x, target.y, initial.x, initial.y);
+                return null;
+            }
+
+            // Take the open node with the lowest cost.
+            current = openSet.poll();
+            if (targetAdjacent(current, target)) {
+                break;
+            }
+
+            // This node has been explored now.
+            closedSet.add(current.getNode());
+            expansions++;
+
+            // Queue each adjacent node, or reroute it through this node if that is cheaper.
+            List<GraphNode> adjacent = getAdjacentNodes(map, current.getNode(), closedSet);
+            for (GraphNode node : adjacent) {
+                WeightedNode queued = openSet.get(node);
+                if (queued == null) {
+                    openSet.add(createNode(node, current, target));
+                    generated++;
+                } else {
+                    openSet.decreaseKey(queued, current);
+                }
+            }
+            peakOpenSize = Math.max(peakOpenSize, openSet.size());
+        }
+
+        // Collect the path.
+        List<GraphNode> path = new ArrayList<>();
+        while (current.getParent() != null) {
+            path.add(0, current.getNode());
+            current = current.getParent();
+        }
+
+        return path;
+    }
+
+    @Override
+    public int getExpansions() {
+        return expansions;
+    }
+
+    @Override
+    public int getGenerated() {
+        return generated;
+    }
+
+    @Override
+    public int getPeakOpenSize() {
+        return peakOpenSize;
+    }
+
+    private WeightedNode createNode(GraphNode node, WeightedNode parent, GraphNode target) {
+        if (landmarks == null) {
+            return new WeightedNode(node, parent, target);
+        }
+        return new WeightedNode(node, parent, landmarks.getCost(node));
+    }
+
+    // Returns true if the target is adjacent to the given node
+    private boolean targetAdjacent(WeightedNode current, GraphNode target) {
+        int x = current.getNode().x;
+        int y = current.getNode().y;
+        for (int i = x - 1; i <= x + 1; i++) {
+            for (int j = y - 1; j <= y + 1; j++) {
+                if (i == target.x && j == target.y) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Returns all nodes that are reachable and adjacent to the current node
+    private List<GraphNode> getAdjacentNodes(GraphNode map[][], GraphNode current, ClosedSet visited) {
+        int x = current.x;
+        int y = current.y;
+        List<GraphNode> nodes = new ArrayList<>();
+        for (int i = Math.max(x - 1, 0); i < Math.min(x + 2, map.length); i++) {
+            for (int j = Math.max(y - 1, 0); j < Math.min(y + 2, map[i].length); j++) {
+                if (i == x && j == y) {
+                    continue;
+                }
+                if (map[i][j] == null) {
+                    continue;
+                }
+                if (visited.contains(i, j)) {
+                    continue;
+                }
+                nodes.add(map[i][j]);
+            }
+        }
+        return nodes;
+    }
+}
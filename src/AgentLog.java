@@ -0,0 +1,305 @@
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+// The agents' console output. A message is never formatted or written on the
+// thread that logs it: the format and its arguments go into a ring buffer,
+// and a background thread formats them and writes them to System.out in
+// batches. Logging threads claim their place in the buffer by advancing its
+// tail with a compare-and-set, retried only when another thread has just
+// claimed the same place, so no thread ever blocks on another or on the
+// console; if the buffer is full the message is dropped and counted instead.
+//
+// Each call site logs through a Site of its own, which holds its level and
+// how many messages a second it may write. A message below the current level
+// costs one comparison, and the format is left alone. One or two whole
+// numbers are taken as longs and boxed only by the writer; other primitive
+// arguments are boxed at the call, so a hot call with those can check
+// isEnabled first, as the java.util.logging calls checked isLoggable.
+//
+// The level starts at INFO, or at the agent.log.level system property, which
+// takes java.util.logging level names such as FINE or OFF.
+public class AgentLog {
+    // Slots in the ring buffer; a power of two.
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    // How long the writer sleeps when there is nothing to write, and the
+    // longest flush waits for it.
+    private static final long IDLE_NANOS = 1000000L;
+    private static final long FLUSH_NANOS = 1000000000L;
+    // Entry counts for arguments that are not objects.
+    private static final int VARARGS = -1;
+    private static final int LONG = -2;
+    private static final int TWO_LONGS = -3;
+
+    private static volatile int threshold = Level.parse(System.getProperty("agent.log.level", "INFO")).intValue();
+
+    // A slot is free for the message numbered n when its sequence is n, and
+    // holds that message once its sequence is n + 1.
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final Entry entries[] = new Entry[CAPACITY];
+    // The number of the next message to log and of the next to write.
+    private static final AtomicLong tail = new AtomicLong();
+    private static volatile long head = 0;
+    private static final AtomicLong dropped = new AtomicLong();
+
+    private static final List<Site> sites = new CopyOnWriteArrayList<Site>();
+    private static final Thread writer;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, i);
+            entries[i] = new Entry();
+        }
+        writer = new Thread("agent-log") {
+            @Override
+            public void run() {
+                while (true) {
+                    if (!drain()) {
+                        LockSupport.parkNanos(IDLE_NANOS);
+                    }
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    public static Level getLevel() {
+        return Level.parse(String.valueOf(threshold));
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level.intValue();
+    }
+
+    // Waits until everything logged so far is written, then reports the
+    // messages each site has held back since it last wrote one.
+    public static void flush() {
+        long last = tail.get();
+        long deadline = System.nanoTime() + FLUSH_NANOS;
+        while (head < last && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(IDLE_NANOS / 10);
+        }
+        for (Site site : sites) {
+            int suppressed = site.suppressed.getAndSet(0);
+            if (suppressed > 0) {
+                System.out.printf("(%d more %s messages suppressed)\n", suppressed, site.name);
+            }
+        }
+        System.out.flush();
+    }
+
+    // Writes every message waiting in the buffer. Returns false if there was none.
+    private static boolean drain() {
+        long position = head;
+        if (sequences.get((int) position & MASK) != position + 1) {
+            return false;
+        }
+        StringBuilder out = new StringBuilder();
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            out.append('(').append(lost).append(" messages dropped, the log buffer was full)\n");
+        }
+        while (sequences.get((int) position & MASK) == position + 1) {
+            Entry entry = entries[(int) position & MASK];
+            int suppressed = entry.site.suppressed.getAndSet(0);
+            if (suppressed > 0) {
+                out.append('(').append(suppressed).append(" more ").append(entry.site.name)
+                        .append(" messages suppressed)\n");
+            }
+            out.append(entry.format()).append('\n');
+            entry.clear();
+            sequences.lazySet((int) position & MASK, position + CAPACITY);
+            position++;
+        }
+        PrintStream console = System.out;
+        console.print(out);
+        console.flush();
+        head = position;
+        return true;
+    }
+
+    private static void publish(Site site, String format, int count, long first, long second, Object a, Object b,
+            Object c, Object d, Object more[]) {
+        // A full slot cannot be skipped, as the writer takes slots in order,
+        // so the tail only moves past a slot that is free.
+        long position;
+        while (true) {
+            position = tail.get();
+            long sequence = sequences.get((int) position & MASK);
+            if (sequence < position) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (sequence == position && tail.compareAndSet(position, position + 1)) {
+                break;
+            }
+        }
+        Entry entry = entries[(int) position & MASK];
+        entry.site = site;
+        entry.format = format;
+        entry.count = count;
+        entry.first = first;
+        entry.second = second;
+        entry.a = a;
+        entry.b = b;
+        entry.c = c;
+        entry.d = d;
+        entry.more = more;
+        sequences.lazySet((int) position & MASK, position + 1);
+    }
+
+    // One place that logs, at one level, and at most perSecond messages a
+    // second, or without limit if perSecond is 0. Messages over the limit
+    // are counted and reported with the site's next message.
+    public static class Site {
+        private final String name;
+        private final int level;
+        private final int perSecond;
+        private volatile long second = -1;
+        private final AtomicInteger written = new AtomicInteger();
+        private final AtomicInteger suppressed = new AtomicInteger();
+
+        public Site(String name, Level level) {
+            this(name, level, 0);
+        }
+
+        public Site(String name, Level level, int perSecond) {
+            this.name = name;
+            this.level = level.intValue();
+            this.perSecond = perSecond;
+            if (perSecond > 0) {
+                sites.add(this);
+            }
+        }
+
+        public boolean isEnabled() {
+            return level >= threshold;
+        }
+
+        // Logs a message as it is, with no formatting.
+        public void log(String message) {
+            if (isEnabled() && admit()) {
+                publish(this, message, 0, 0, 0, null, null, null, null, null);
+            }
+        }
+
+        // Logs a String.format format with its arguments. The arguments are
+        // formatted later on the writer's thread, so they should not be
+        // changed after they are logged.
+        public void log(String format, long first) {
+            if (isEnabled() && admit()) {
+                publish(this, format, LONG, first, 0, null, null, null, null, null);
+            }
+        }
+
+        public void log(String format, long first, long second) {
+            if (isEnabled() && admit()) {
+                publish(this, format, TWO_LONGS, first, second, null, null, null, null, null);
+            }
+        }
+
+        public void log(String format, Object a) {
+            if (isEnabled() && admit()) {
+                publish(this, format, 1, 0, 0, a, null, null, null, null);
+            }
+        }
+
+        public void log(String format, Object a, Object b) {
+            if (isEnabled() && admit()) {
+                publish(this, format, 2, 0, 0, a, b, null, null, null);
+            }
+        }
+
+        public void log(String format, Object a, Object b, Object c) {
+            if (isEnabled() && admit()) {
+                publish(this, format, 3, 0, 0, a, b, c, null, null);
+            }
+        }
+
+        public void log(String format, Object a, Object b, Object c, Object d) {
+            if (isEnabled() && admit()) {
+                publish(this, format, 4, 0, 0, a, b, c, d, null);
+            }
+        }
+
+        public void log(String format, Object... arguments) {
+            if (isEnabled() && admit()) {
+                publish(this, format, VARARGS, 0, 0, null, null, null, null, arguments);
+            }
+        }
+
+        private boolean admit() {
+            if (perSecond == 0) {
+                return true;
+            }
+            long now = System.nanoTime() / 1000000000L;
+            if (now != second) {
+                second = now;
+                written.set(0);
+            }
+            if (written.incrementAndGet() <= perSecond) {
+                return true;
+            }
+            suppressed.incrementAndGet();
+            return false;
+        }
+    }
+
+    // A message waiting in the buffer: its format and its arguments, which
+    // are count objects from a to d, all in more for VARARGS, or one or two
+    // longs for LONG and TWO_LONGS.
+    private static class Entry {
+        Site site;
+        String format;
+        int count;
+        long first, second;
+        Object a, b, c, d;
+        Object more[];
+
+        String format() {
+            try {
+                switch (count) {
+                case 0:
+                    return format;
+                case 1:
+                    return String.format(format, a);
+                case 2:
+                    return String.format(format, a, b);
+                case 3:
+                    return String.format(format, a, b, c);
+                case 4:
+                    return String.format(format, a, b, c, d);
+                case LONG:
+                    return String.format(format, first);
+                case TWO_LONGS:
+                    return String.format(format, first, second);
+                default:
+                    return String.format(format, more);
+                }
+            } catch (RuntimeException e) {
+                return format + " (" + e + ")";
+            }
+        }
+
+        void clear() {
+            site = null;
+            format = null;
+            a = b = c = d = null;
+            more = null;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+// Anytime Repairing A* (ARA*). The first pass is weighted A* with f = g + e*h
+// for a large e, which finds a path fast; each later pass lowers e and reuses
+// everything already searched, so the path keeps improving until it is proven
+// optimal. The work is cut into slices by a time or expansion budget, and the
+// search can be resumed where the last slice stopped, so a caller can plan a
+// little on every turn and always hold the best path found so far, together
+// with a bound on how far from optimal it can be.
+//
+// The search runs backwards, from the ring of cells around the target towards
+// the start, so every cell it reaches knows its way to the target. A unit that
+// moves along its path therefore keeps a valid path from where it stands as
+// the later passes refine the tree.
+public class AnytimePlanner implements PathPlanner {
+    private static final AgentLog.Site UNREACHABLE = new AgentLog.Site("AnytimePlanner", Level.INFO, 10);
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    private final double initialEpsilon;
+    private final double epsilonStep;
+    private final long timeBudget;
+    private final int expansionBudget;
+
+    private GraphNode map[][];
+    private int width = 0;
+    private int height = 0;
+    private int startCell;
+    private double epsilon;
+    private double bound;
+    private boolean finished;
+    private int expansions = 0;
+    private int generated = 0;
+    private int peakOpenSize = 0;
+
+    // Per cell: the query that last reached it, cost to the ring, heap key,
+    // next cell towards the ring, and position in the heap (-1 when not queued).
+    private int seen[];
+    private int costs[];
+    private double keys[];
+    private int parents[];
+    private int heapIndex[];
+    private int heap[];
+    private int size;
+    private int generation = 0;
+
+    // The pass that last closed each cell, and the closed cells whose cost
+    // dropped during the current pass, which the next pass must look at again.
+    private int closedIn[];
+    private int inconsistentIn[];
+    private int inconsistent[];
+    private int inconsistentSize;
+    private int pass = 0;
+
+    // Budgets of zero are unlimited. With both unlimited, each call to improve
+    // runs the search to the optimal path.
+    public AnytimePlanner(double initialEpsilon, double epsilonStep, long timeBudgetNanos, int expansionBudget) {
+        this.initialEpsilon = Math.max(initialEpsilon, 1.0);
+        this.epsilonStep = epsilonStep;
+        this.timeBudget = timeBudgetNanos;
+        this.expansionBudget = expansionBudget;
+    }
+
+    // Runs one budgeted slice and returns the best path found, or keeps going
+    // until the first path if the slice found none.
+    @Override
+    public List<GraphNode> getPathToTarget(GraphNode map[][], GraphNode initial, GraphNode target) {
+        start(map, initial, target);
+        improve();
+        while (!hasPath() && !finished) {
+            improve();
+        }
+        if (!hasPath()) {
+            UNREACHABLE.log("Target (%d, %d) is unreachable from position (%d, %d).",
+                    target.x, target.y, initial.x, initial.y);
+            return null;
+        }
+        return getPath(initial);
+    }
+
+    // The nodes expanded since the query started, over every slice, and
+    // likewise for the generated and open set counts.
+    @Override
+    public int getExpansions() {
+        return expansions;
+    }
+
+    @Override
+    public int getGenerated() {
+        return generated;
+    }
+
+    @Override
+    public int getPeakOpenSize() {
+        return peakOpenSize;
+    }
+
+    // Starts a new query without searching yet.
+    public void start(GraphNode map[][], GraphNode initial, GraphNode target) {
+        prepare(map.length, map[0].length);
+        this.map = map;
+        this.startCell = initial.x * height + initial.y;
+        this.epsilon = initialEpsilon;
+        this.bound = Double.POSITIVE_INFINITY;
+        this.finished = false;
+        this.expansions = 0;
+        this.generated = 0;
+        this.peakOpenSize = 0;
+
+        for (int i = Math.max(target.x - 1, 0); i <= Math.min(target.x + 1, width - 1); i++) {
+            for (int j = Math.max(target.y - 1, 0); j <= Math.min(target.y + 1, height - 1); j++) {
+                int cell = i * height + j;
+                if (isOpen(cell)) {
+                    reach(cell, 0, -1);
+                }
+            }
+        }
+    }
+
+    // Searches for one budget's worth, passing on to lower weights as each
+    // pass completes. Returns true if a path is known.
+    public boolean improve() {
+        long deadline = timeBudget > 0 ? System.nanoTime() + timeBudget : Long.MAX_VALUE;
+        int limit = expansionBudget > 0 ? expansions + expansionBudget : Integer.MAX_VALUE;
+        while (!finished) {
+            if (!improvePath(deadline, limit)) {
+                break;
+            }
+            if (!hasPath()) {
+                // The whole reachable area is searched and the start is not in it.
+                finished = true;
+                break;
+            }
+            bound = Math.min(epsilon, getLowerBoundRatio());
+            if (bound <= 1.0) {
+                bound = 1.0;
+                finished = true;
+                break;
+            }
+            epsilon = Math.max(1.0, epsilon - epsilonStep);
+            startPass();
+        }
+        return hasPath();
+    }
+
+    // True once the path is proven optimal or the target proven unreachable.
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public boolean hasPath() {
+        return getCost(startCell) < INFINITY;
+    }
+
+    // The path can cost at most this many times the optimal. Infinite until
+    // the first pass completes.
+    public double getBound() {
+        return bound;
+    }
+
+    // The path from any reached cell, such as one along an earlier path, or
+    // null if the search has not reached it.
+    public List<GraphNode> getPath(GraphNode from) {
+        int cell = from.x * height + from.y;
+        if (getCost(cell) >= INFINITY) {
+            return null;
+        }
+        List<GraphNode> path = new ArrayList<>(costs[cell]);
+        for (cell = parents[cell]; cell >= 0; cell = parents[cell]) {
+            path.add(map[cell / height][cell % height]);
+        }
+        return path;
+    }
+
+    // One pass of weighted A*, which stops once nothing queued can lead to a
+    // cheaper path, or returns false if the budget runs out first.
+    private boolean improvePath(long deadline, int limit) {
+        while (size > 0 && keys[heap[0]] < getCost(startCell)) {
+            if (expansions >= limit || ((expansions & 63) == 0 && System.nanoTime() >= deadline)) {
+                return false;
+            }
+            int cell = poll();
+            closedIn[cell] = pass;
+            expansions++;
+
+            int x = cell / height;
+            int y = cell % height;
+            int cost = costs[cell] + 1;
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                    int next = i * height + j;
+                    if (!isOpen(next) || cost >= getCost(next)) {
+                        continue;
+                    }
+                    if (closedIn[next] == pass && seen[next] == generation) {
+                        costs[next] = cost;
+                        parents[next] = cell;
+                        if (inconsistentIn[next] != pass) {
+                            inconsistentIn[next] = pass;
+                            inconsistent[inconsistentSize++] = next;
+                        }
+                    } else {
+                        reach(next, cost, cell);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    // Requeues the inconsistent cells, re-keys the queue for the new weight
+    // and reopens every closed cell.
+    private void startPass() {
+        pass++;
+        for (int i = 0; i < inconsistentSize; i++) {
+            int cell = inconsistent[i];
+            heap[size] = cell;
+            heapIndex[cell] = size++;
+        }
+        generated += inconsistentSize;
+        peakOpenSize = Math.max(peakOpenSize, size);
+        inconsistentSize = 0;
+        for (int i = 0; i < size; i++) {
+            keys[heap[i]] = costs[heap[i]] + epsilon * getHeuristicCost(heap[i]);
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    // How many times larger the path cost is than the lowest unweighted f
+    // among the queued and inconsistent cells, which no path can beat.
+    private double getLowerBoundRatio() {
+        int lowest = INFINITY;
+        for (int i = 0; i < size; i++) {
+            lowest = Math.min(lowest, costs[heap[i]] + getHeuristicCost(heap[i]));
+        }
+        for (int i = 0; i < inconsistentSize; i++) {
+            lowest = Math.min(lowest, costs[inconsistent[i]] + getHeuristicCost(inconsistent[i]));
+        }
+        if (lowest >= INFINITY || lowest <= 0) {
+            return 1.0;
+        }
+        return (double) getCost(startCell) / lowest;
+    }
+
+    private void reach(int cell, int cost, int parent) {
+        if (seen[cell] != generation) {
+            seen[cell] = generation;
+            heapIndex[cell] = -1;
+        }
+        costs[cell] = cost;
+        parents[cell] = parent;
+        keys[cell] = cost + epsilon * getHeuristicCost(cell);
+        if (heapIndex[cell] < 0) {
+            heap[size] = cell;
+            heapIndex[cell] = size;
+            siftUp(size++);
+            generated++;
+            peakOpenSize = Math.max(peakOpenSize, size);
+        } else {
+            siftUp(heapIndex[cell]);
+        }
+    }
+
+    private int getCost(int cell) {
+        return seen[cell] == generation ? costs[cell] : INFINITY;
+    }
+
+    // The Chebyshev distance to the start.
+    private int getHeuristicCost(int cell) {
+        return Math.max(Math.abs(cell / height - startCell / height), Math.abs(cell % height - startCell % height));
+    }
+
+    // The start cell counts as open even though its own unit stands on it.
+    private boolean isOpen(int cell) {
+        return cell == startCell || map[cell / height][cell % height] != null;
+    }
+
+    // Sizes the arrays for the map, keeping them if they already fit, and starts a new generation.
+    private void prepare(int width, int height) {
+        if (seen == null || this.width != width || this.height != height) {
+            int cells = width * height;
+            this.width = width;
+            this.height = height;
+            seen = new int[cells];
+            costs = new int[cells];
+            keys = new double[cells];
+            parents = new int[cells];
+            heapIndex = new int[cells];
+            heap = new int[cells];
+            closedIn = new int[cells];
+            inconsistentIn = new int[cells];
+            inconsistent = new int[cells];
+            generation = 0;
+        }
+        generation++;
+        pass++;
+        size = 0;
+        inconsistentSize = 0;
+    }
+
+    private int poll() {
+        int first = heap[0];
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            heapIndex[heap[0]] = 0;
+            siftDown(0);
+        }
+        heapIndex[first] = -1;
+        return first;
+    }
+
+    private void siftUp(int index) {
+        int cell = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!lessThan(cell, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heapIndex[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = cell;
+        heapIndex[cell] = index;
+    }
+
+    private void siftDown(int index) {
+        int cell = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && lessThan(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!lessThan(heap[child], cell)) {
+                break;
+            }
+            heap[index] = heap[child];
+            heapIndex[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = cell;
+        heapIndex[cell] = index;
+    }
+
+    // Orders by key, preferring the cell with more cost behind it on ties.
+    private boolean lessThan(int a, int b) {
+        if (keys[a] != keys[b]) {
+            return keys[a] < keys[b];
+        }
+        return costs[a] > costs[b];
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+
+// Bidirectional A*. One search runs forwards from the start towards the ring
+// of cells around the target, the other backwards from that ring towards the
+// start, each with the Chebyshev distance to its own goal as the heuristic.
+// Every time the two frontiers touch, the best meeting cost is updated, and
+// the search stops once neither open set can hold anything cheaper.
+public class BidirectionalSearch implements PathPlanner {
+    private static final AgentLog.Site UNREACHABLE = new AgentLog.Site("BidirectionalSearch", Level.INFO, 10);
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+    private static final int FORWARD = 0;
+    private static final int BACKWARD = 1;
+
+    private GraphNode map[][];
+    private GraphNode initial;
+    private GraphNode target;
+    private int height;
+    private int expansions = 0;
+    private int generated = 0;
+    private int peakOpenSize = 0;
+
+    // Per direction: cost from that side's source, parent cell, and whether expanded.
+    private int costs[][];
+    private int parents[][];
+    private boolean closed[][];
+    private List<PriorityQueue<int[]>> openSets;
+
+    @Override
+    public List<GraphNode> getPathToTarget(GraphNode map[][], GraphNode initial, GraphNode target) {
+        this.map = map;
+        this.initial = initial;
+        this.target = target;
+        this.height = map[0].length;
+        this.expansions = 0;
+        this.generated = 0;
+        this.peakOpenSize = 0;
+        if (isGoal(initial.x, initial.y)) {
+            return new ArrayList<>();
+        }
+
+        int cells = map.length * height;
+        costs = new int[2][cells];
+        parents = new int[2][cells];
+        closed = new boolean[2][cells];
+        openSets = new ArrayList<>();
+        for (int side = FORWARD; side <= BACKWARD; side++) {
+            Arrays.fill(costs[side], INFINITY);
+            Arrays.fill(parents[side], -1);
+            // Entries are {f, g, cell}; ties go to the deeper entry.
+            openSets.add(new PriorityQueue<>(16, new Comparator<int[]>() {
+                @Override
+                public int compare(int a[], int b[]) {
+                    return a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(b[1], a[1]);
+                }
+            }));
+        }
+
+        open(FORWARD, index(initial.x, initial.y), 0, -1);
+        for (int i = target.x - 1; i <= target.x + 1; i++) {
+            for (int j = target.y - 1; j <= target.y + 1; j++) {
+                if (isOpen(i, j)) {
+                    open(BACKWARD, index(i, j), 0, -1);
+                }
+            }
+        }
+
+        int bestCost = INFINITY;
+        int meeting = -1;
+        while (!openSets.get(FORWARD).isEmpty() && !openSets.get(BACKWARD).isEmpty()) {
+            if (bestCost <= Math.max(getMinimum(FORWARD), getMinimum(BACKWARD))) {
+                break;
+            }
+
+            // Grow whichever frontier is smaller.
+            int side = openSets.get(FORWARD).size() <= openSets.get(BACKWARD).size() ? FORWARD : BACKWARD;
+            int entry[] = openSets.get(side).poll();
+            int cell = entry[2];
+            if (closed[side][cell] || entry[1] > costs[side][cell]) {
+                continue;
+            }
+            closed[side][cell] = true;
+            expansions++;
+
+            int x = cell / height;
+            int y = cell % height;
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, map.length - 1); i++) {
+                for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                    if (!isOpen(i, j)) {
+                        continue;
+                    }
+                    int next = index(i, j);
+                    int cost = costs[side][cell] + 1;
+                    if (cost < costs[side][next] && !closed[side][next]) {
+                        open(side, next, cost, cell);
+                    }
+                    int other = 1 - side;
+                    if (costs[other][next] < INFINITY && costs[side][next] + costs[other][next] < bestCost) {
+                        bestCost = costs[side][next] + costs[other][next];
+                        meeting = next;
+                    }
+                }
+            }
+        }
+
+        if (meeting < 0) {
+            UNREACHABLE.log("Target (%d, %d) is unreachable from position (%d, %d).",
+                    target.x, target.y, initial.x, initial.y);
+            return null;
+        }
+        return collectPath(meeting);
+    }
+
+    @Override
+    public int getExpansions() {
+        return expansions;
+    }
+
+    @Override
+    public int getGenerated() {
+        return generated;
+    }
+
+    @Override
+    public int getPeakOpenSize() {
+        return peakOpenSize;
+    }
+
+    private void open(int side, int cell, int cost, int parent) {
+        costs[side][cell] = cost;
+        parents[side][cell] = parent;
+        openSets.get(side).add(new int[] { cost + getHeuristicCost(side, cell), cost, cell });
+        generated++;
+        peakOpenSize = Math.max(peakOpenSize, openSets.get(FORWARD).size() + openSets.get(BACKWARD).size());
+    }
+
+    // The lowest f of a side's open set, skipping stale entries.
+    private int getMinimum(int side) {
+        PriorityQueue<int[]> openSet = openSets.get(side);
+        while (!openSet.isEmpty()) {
+            int entry[] = openSet.peek();
+            if (!closed[side][entry[2]] && entry[1] <= costs[side][entry[2]]) {
+                return entry[0];
+            }
+            openSet.poll();
+        }
+        return INFINITY;
+    }
+
+    private int getHeuristicCost(int side, int cell) {
+        int x = cell / height;
+        int y = cell % height;
+        if (side == FORWARD) {
+            return Math.max(Math.max(Math.abs(x - target.x), Math.abs(y - target.y)) - 1, 0);
+        }
+        return Math.max(Math.abs(x - initial.x), Math.abs(y - initial.y));
+    }
+
+    // Joins the forward half up to the meeting cell with the backward half after it.
+    private List<GraphNode> collectPath(int meeting) {
+        List<GraphNode> path = new ArrayList<>();
+        for (int cell = meeting; parents[FORWARD][cell] >= 0; cell = parents[FORWARD][cell]) {
+            path.add(0, map[cell / height][cell % height]);
+        }
+        for (int cell = parents[BACKWARD][meeting]; cell >= 0; cell = parents[BACKWARD][cell]) {
+            path.add(map[cell / height][cell % height]);
+        }
+        return path;
+    }
+
+    private boolean isOpen(int x, int y) {
+        return x >= 0 && x < map.length && y >= 0 && y < height && map[x][y] != null;
+    }
+
+    private boolean isGoal(int x, int y) {
+        return Math.abs(x - target.x) <= 1 && Math.abs(y - target.y) <= 1;
+    }
+
+    private int index(int x, int y) {
+        return x * height + y;
+    }
+}
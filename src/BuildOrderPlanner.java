@@ -0,0 +1,560 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import edu.cwru.sepia.environment.model.state.ResourceNode.Type;
+import edu.cwru.sepia.environment.model.state.ResourceType;
+import edu.cwru.sepia.environment.model.state.State.StateView;
+import edu.cwru.sepia.environment.model.state.Template.TemplateView;
+import edu.cwru.sepia.environment.model.state.Unit.UnitView;
+import edu.cwru.sepia.environment.model.state.UnitTemplate.UnitTemplateView;
+
+// Plans the order to build units in so that the units wanted and the gold and
+// wood targets are all reached as early as possible.
+//
+// The search runs over abstract economies, not game states. An economy is only
+// the gold and wood in stock, the units of each kind, the food used and
+// provided, and the orders still in production. Gathering is a flow: each
+// peasant that is not building brings in the resources per turn of the place
+// the GatherScheduler would give it, and while saving up for the next order
+// the peasants are split between gold and wood the way the scheduler splits
+// them. Costs, food, and which kind produces which come from the templates.
+// SEPIA's models finish an order in one step whatever its template says, so
+// an order takes one turn unless production is durative, in which case it
+// takes its template's time cost. Either way the time actually seen replaces
+// the estimate once one is built.
+//
+// The search is a depth-first branch and bound over the order to start the
+// wanted units in, with any number of extra peasants mixed in. It stops after
+// a fixed number of expansions or a few milliseconds, keeping the best plan so
+// far, so it fits in a turn. A re-plan first scores what is left of the last
+// plan from the new state, which bounds the search from its first node.
+public class BuildOrderPlanner {
+    private static final int MAX_EXPANSIONS = 20000;
+    private static final long MAX_NANOS = 20000000L;
+    // Gathering places to look for per type; food runs out well before this.
+    private static final int MAX_GATHERERS = 16;
+    private static final double EPSILON = 1e-6;
+
+    // One order of a plan: the kind to build, the unit kind that builds it,
+    // the turn to give the order on, and the gold and wood the peasants
+    // should gather toward until then.
+    public static class Step {
+        public final String name;
+        public final int templateId;
+        public final String producer;
+        public final int goldCost;
+        public final int woodCost;
+        public final int turn;
+        public final int aimGold;
+        public final int aimWood;
+
+        private Step(String name, int templateId, String producer, int goldCost, int woodCost, int turn,
+                int aimGold, int aimWood) {
+            this.name = name;
+            this.templateId = templateId;
+            this.producer = producer;
+            this.goldCost = goldCost;
+            this.woodCost = woodCost;
+            this.turn = turn;
+            this.aimGold = aimGold;
+            this.aimWood = aimWood;
+        }
+
+        @Override
+        public String toString() {
+            return name + "@" + turn;
+        }
+    }
+
+    private final int playernum;
+    private final int goldTarget;
+    private final int woodTarget;
+
+    // Per kind of unit: its name, template, costs, food, the kind that
+    // produces it (or -1) and how many are wanted.
+    private final String names[];
+    private final int templateIds[];
+    private final int goldCosts[];
+    private final int woodCosts[];
+    private final int foodCosts[];
+    private final int foodProvided[];
+    private final int producers[];
+    private final int wanted[];
+    private final int durations[];
+    private final int peasant;
+
+    // Orders given and not yet seen done, as {kind, turn given, count once done, unit given it}.
+    private final List<int[]> pending = new ArrayList<int[]>();
+    private int lastCounts[];
+
+    // The search's state.
+    private double goldRates[];
+    private double woodRates[];
+    private int maxPeasants;
+    private double bestTime;
+    private List<int[]> bestSteps;
+    private int expansions;
+    private long deadline;
+
+    public BuildOrderPlanner(StateView state, int playernum, Map<String, Integer> wantedUnits, int goldTarget,
+            int woodTarget, boolean durative) {
+        this.playernum = playernum;
+        this.goldTarget = goldTarget;
+        this.woodTarget = woodTarget;
+
+        // The kinds wanted, peasants, and whatever produces them, by template ID.
+        List<Integer> kinds = new ArrayList<Integer>();
+        for (String name : wantedUnits.keySet()) {
+            kinds.add(state.getTemplate(playernum, name).getID());
+        }
+        int peasantId = state.getTemplate(playernum, "Peasant").getID();
+        if (!kinds.contains(peasantId)) {
+            kinds.add(peasantId);
+        }
+        List<Integer> preferred = new ArrayList<Integer>(kinds);
+        for (int id : state.getUnitIds(playernum)) {
+            preferred.add(state.getUnit(id).getTemplateView().getID());
+        }
+        for (int i = 0; i < kinds.size(); i++) {
+            UnitTemplateView producer = findProducer(state, kinds.get(i), preferred);
+            if (producer != null && !kinds.contains(producer.getID())) {
+                kinds.add(producer.getID());
+            }
+        }
+
+        int n = kinds.size();
+        names = new String[n];
+        templateIds = new int[n];
+        goldCosts = new int[n];
+        woodCosts = new int[n];
+        foodCosts = new int[n];
+        foodProvided = new int[n];
+        producers = new int[n];
+        wanted = new int[n];
+        durations = new int[n];
+        for (int i = 0; i < n; i++) {
+            UnitTemplateView kind = (UnitTemplateView) state.getTemplate(kinds.get(i));
+            names[i] = kind.getName();
+            templateIds[i] = kind.getID();
+            goldCosts[i] = kind.getGoldCost();
+            woodCosts[i] = kind.getWoodCost();
+            foodCosts[i] = kind.getFoodCost();
+            foodProvided[i] = kind.getFoodProvided();
+            UnitTemplateView producer = findProducer(state, kind.getID(), preferred);
+            producers[i] = producer == null ? -1 : kinds.indexOf(producer.getID());
+            Integer count = wantedUnits.get(names[i]);
+            wanted[i] = count == null ? 0 : count;
+            durations[i] = durative ? Math.max(kind.getTimeCost(), 1) : 1;
+        }
+        peasant = kinds.indexOf(peasantId);
+        lastCounts = new int[n];
+    }
+
+    // Notes an order given this turn to a unit for a unit of the named kind.
+    public void ordered(String name, int unitId, StateView state, UnitRegistry units) {
+        int kind = indexOf(name);
+        pending.add(new int[] { kind, state.getTurnNumber(), units.count(name) + 1, unitId });
+    }
+
+    // Whether a unit is carrying out an order, and so should not be sent to gather.
+    public boolean isBusy(int unitId) {
+        for (int order[] : pending) {
+            if (order[3] == unitId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Reads which orders are done. Returns true if the game has drifted from
+    // what the plan assumed: an order took a different time than estimated,
+    // an order seems to have failed, or a unit was lost.
+    public boolean update(StateView state, UnitRegistry units) {
+        boolean drifted = false;
+        int turn = state.getTurnNumber();
+        for (Iterator<int[]> i = pending.iterator(); i.hasNext();) {
+            int order[] = i.next();
+            int kind = order[0];
+            if (units.count(names[kind]) >= order[2]) {
+                int took = Math.max(turn - order[1], 1);
+                if (took != durations[kind]) {
+                    durations[kind] = took;
+                    drifted = true;
+                }
+                i.remove();
+            } else if (turn - order[1] > 2 * durations[kind] + 10) {
+                i.remove();
+                drifted = true;
+            }
+        }
+        for (int kind = 0; kind < names.length; kind++) {
+            int count = units.count(names[kind]);
+            if (count < lastCounts[kind]) {
+                drifted = true;
+            }
+            lastCounts[kind] = count;
+        }
+        return drifted;
+    }
+
+    // Plans the rest of the build from the current state. The steps of an
+    // earlier plan not yet carried out, if given, are the plan to beat.
+    public List<Step> plan(StateView state, UnitRegistry units, GatherScheduler scheduler, int townhallId,
+            List<Step> previous) {
+        UnitTemplateView template = (UnitTemplateView) state.getTemplate(playernum, "Peasant");
+        goldRates = scheduler.getRates(state, townhallId, Type.GOLD_MINE, MAX_GATHERERS, template);
+        woodRates = scheduler.getRates(state, townhallId, Type.TREE, MAX_GATHERERS, template);
+        maxPeasants = Math.max(goldRates.length + woodRates.length, units.count("Peasant"));
+
+        Economy start = getEconomy(state, units);
+        bestTime = Double.POSITIVE_INFINITY;
+        bestSteps = null;
+        if (previous != null) {
+            List<int[]> steps = new ArrayList<int[]>();
+            Economy economy = start.copy();
+            boolean valid = true;
+            for (Step step : previous) {
+                int kind = indexOf(step.name);
+                int aim[] = kind < 0 ? null : getAim(economy, kind);
+                if (kind < 0 || !start(economy, kind)) {
+                    valid = false;
+                    break;
+                }
+                steps.add(new int[] { kind, (int) Math.ceil(economy.time - EPSILON), aim[0], aim[1] });
+            }
+            if (valid && finish(economy)) {
+                bestTime = economy.time;
+                bestSteps = steps;
+            }
+        }
+
+        expansions = 0;
+        deadline = System.nanoTime() + MAX_NANOS;
+        search(start, new ArrayList<int[]>());
+
+        List<Step> plan = new ArrayList<Step>();
+        if (bestSteps != null) {
+            for (int step[] : bestSteps) {
+                int kind = step[0];
+                plan.add(new Step(names[kind], templateIds[kind], names[producers[kind]], goldCosts[kind],
+                        woodCosts[kind], step[1], step[2], step[3]));
+            }
+        }
+        return plan;
+    }
+
+    // The turn the last plan reaches everything by, or -1 if it cannot.
+    public int getMakespan() {
+        return bestSteps == null ? -1 : (int) Math.ceil(bestTime - EPSILON);
+    }
+
+    public int getExpansions() {
+        return expansions;
+    }
+
+    private void search(Economy economy, List<int[]> steps) {
+        if (++expansions > MAX_EXPANSIONS || ((expansions & 255) == 0 && System.nanoTime() > deadline)) {
+            expansions = MAX_EXPANSIONS;
+            return;
+        }
+        if (economy.time + getLowerBound(economy) >= bestTime - EPSILON) {
+            return;
+        }
+        boolean done = true;
+        for (int kind = 0; kind < names.length; kind++) {
+            boolean more = economy.started[kind] < wanted[kind];
+            if (more) {
+                done = false;
+            } else if (kind != peasant || economy.started[kind] >= maxPeasants) {
+                continue;
+            }
+            Economy next = economy.copy();
+            int aim[] = getAim(next, kind);
+            if (!start(next, kind)) {
+                continue;
+            }
+            steps.add(new int[] { kind, (int) Math.ceil(next.time - EPSILON), aim[0], aim[1] });
+            search(next, steps);
+            steps.remove(steps.size() - 1);
+        }
+        if (done) {
+            Economy end = economy.copy();
+            if (finish(end) && end.time < bestTime - EPSILON) {
+                bestTime = end.time;
+                bestSteps = new ArrayList<int[]>(steps);
+            }
+        }
+    }
+
+    // Turns until the end, at the least: what is still to be paid for,
+    // gathered as if every peasant there could be worked on that resource
+    // alone, and what is still in production.
+    private double getLowerBound(Economy economy) {
+        int remaining[] = getRemaining(economy);
+        double gold = remaining[0] - economy.gold;
+        double wood = remaining[1] - economy.wood;
+        double bound = 0;
+        if (gold > EPSILON) {
+            bound = Math.max(bound, gold / getRate(goldRates, maxPeasants));
+        }
+        if (wood > EPSILON) {
+            bound = Math.max(bound, wood / getRate(woodRates, maxPeasants));
+        }
+        if (!economy.events.isEmpty()) {
+            bound = Math.max(bound, economy.events.get(economy.events.size() - 1)[0] - economy.time);
+        }
+        return bound;
+    }
+
+    // The gold and wood still to be paid out: the targets and the wanted
+    // units not yet ordered.
+    private int[] getRemaining(Economy economy) {
+        int remaining[] = { goldTarget, woodTarget };
+        for (int kind = 0; kind < names.length; kind++) {
+            int left = Math.max(wanted[kind] - economy.started[kind], 0);
+            remaining[0] += left * goldCosts[kind];
+            remaining[1] += left * woodCosts[kind];
+        }
+        return remaining;
+    }
+
+    // What to gather toward while waiting to order a unit of a kind. An extra
+    // peasant pays for itself sooner the sooner it comes, so the peasants save
+    // up just its cost. For anything else, nothing is gained by having it
+    // early, so they gather toward everything still to be paid out, and
+    // neither resource runs short at the end.
+    private int[] getAim(Economy economy, int kind) {
+        if (kind == peasant && economy.started[kind] >= wanted[kind]) {
+            return new int[] { goldCosts[kind], woodCosts[kind] };
+        }
+        return getRemaining(economy);
+    }
+
+    // Starts an order for a unit of a kind as soon as it can be, moving the
+    // economy on to that time. False if it never can be.
+    private boolean start(Economy economy, int kind) {
+        int aim[] = getAim(economy, kind);
+        int producer = producers[kind];
+        if (producer < 0) {
+            return false;
+        }
+        while (economy.counts[producer] - economy.busy[producer] <= 0
+                || economy.foodUsed + foodCosts[kind] > economy.foodProvided) {
+            if (economy.events.isEmpty()) {
+                return false;
+            }
+            gather(economy, economy.events.get(0)[0], aim[0], aim[1]);
+            complete(economy);
+        }
+        if (!saveUp(economy, goldCosts[kind], woodCosts[kind], aim[0], aim[1])) {
+            return false;
+        }
+        economy.gold -= goldCosts[kind];
+        economy.wood -= woodCosts[kind];
+        economy.foodUsed += foodCosts[kind];
+        economy.started[kind]++;
+        economy.busy[producer]++;
+        economy.addEvent(economy.time + durations[kind], kind, producer);
+        return true;
+    }
+
+    // Lets everything in production finish and saves up the targets.
+    private boolean finish(Economy economy) {
+        while (!economy.events.isEmpty()) {
+            gather(economy, economy.events.get(0)[0], goldTarget, woodTarget);
+            complete(economy);
+        }
+        return saveUp(economy, goldTarget, woodTarget, goldTarget, woodTarget);
+    }
+
+    // Moves the economy on until it holds the given gold and wood, gathering
+    // toward the aim and finishing orders on the way. False if it never will.
+    private boolean saveUp(Economy economy, int gold, int wood, int aimGold, int aimWood) {
+        while (true) {
+            double goldLeft = gold - economy.gold;
+            double woodLeft = wood - economy.wood;
+            if (goldLeft <= EPSILON && woodLeft <= EPSILON) {
+                return true;
+            }
+            double split[] = getSplit(economy, aimGold - economy.gold, aimWood - economy.wood);
+            double turns = Math.max(getTurns(goldLeft, split[0]), getTurns(woodLeft, split[1]));
+            double next = economy.events.isEmpty() ? Double.POSITIVE_INFINITY : economy.events.get(0)[0];
+            if (next < economy.time + turns) {
+                gather(economy, next, aimGold, aimWood);
+                complete(economy);
+                continue;
+            }
+            if (turns == Double.POSITIVE_INFINITY) {
+                return false;
+            }
+            economy.gold += split[0] * turns;
+            economy.wood += split[1] * turns;
+            economy.time += turns;
+            return true;
+        }
+    }
+
+    // Gathers toward the given gold and wood until the given time.
+    private void gather(Economy economy, double until, int gold, int wood) {
+        double split[] = getSplit(economy, gold - economy.gold, wood - economy.wood);
+        double turns = until - economy.time;
+        economy.gold += split[0] * turns;
+        economy.wood += split[1] * turns;
+        economy.time = until;
+    }
+
+    // The split of the free peasants that gathers what is left soonest, as
+    // {gold per turn, wood per turn, turns to gather it}. With nothing left,
+    // the peasants go where they bring in the most.
+    private double[] getSplit(Economy economy, double goldLeft, double woodLeft) {
+        int gatherers = economy.counts[peasant] - economy.busy[peasant];
+        double best[] = null;
+        for (int wood = 0; wood <= gatherers; wood++) {
+            double goldRate = getRate(goldRates, gatherers - wood);
+            double woodRate = getRate(woodRates, wood);
+            double turns = Math.max(getTurns(goldLeft, goldRate), getTurns(woodLeft, woodRate));
+            if (best == null || turns < best[2]
+                    || (turns == best[2] && goldRate + woodRate > best[0] + best[1])) {
+                best = new double[] { goldRate, woodRate, turns };
+            }
+        }
+        return best;
+    }
+
+    private static double getTurns(double left, double rate) {
+        if (left <= EPSILON) {
+            return 0;
+        }
+        return rate == 0 ? Double.POSITIVE_INFINITY : left / rate;
+    }
+
+    private static double getRate(double rates[], int peasants) {
+        double rate = 0;
+        for (int i = 0; i < Math.min(peasants, rates.length); i++) {
+            rate += rates[i];
+        }
+        return rate;
+    }
+
+    // Finishes the first order in production.
+    private void complete(Economy economy) {
+        double event[] = economy.events.remove(0);
+        int kind = (int) event[1];
+        economy.counts[kind]++;
+        economy.busy[(int) event[2]]--;
+        economy.foodProvided += foodProvided[kind];
+    }
+
+    private Economy getEconomy(StateView state, UnitRegistry units) {
+        Economy economy = new Economy(names.length);
+        int turn = state.getTurnNumber();
+        economy.time = turn;
+        economy.gold = state.getResourceAmount(playernum, ResourceType.GOLD);
+        economy.wood = state.getResourceAmount(playernum, ResourceType.WOOD);
+        // Loads on their way to the town hall are as good as deposited.
+        for (int id : units.getUnits("Peasant")) {
+            UnitView unit = state.getUnit(id);
+            if (unit.getCargoType() == ResourceType.GOLD) {
+                economy.gold += unit.getCargoAmount();
+            } else if (unit.getCargoType() == ResourceType.WOOD) {
+                economy.wood += unit.getCargoAmount();
+            }
+        }
+        for (int kind = 0; kind < names.length; kind++) {
+            economy.counts[kind] = units.count(names[kind]);
+            economy.started[kind] = economy.counts[kind];
+            economy.foodUsed += economy.counts[kind] * foodCosts[kind];
+            economy.foodProvided += economy.counts[kind] * foodProvided[kind];
+        }
+        for (int order[] : pending) {
+            int kind = order[0];
+            economy.started[kind]++;
+            economy.foodUsed += foodCosts[kind];
+            economy.busy[producers[kind]]++;
+            economy.addEvent(Math.max(order[1] + durations[kind], turn + 1), kind, producers[kind]);
+        }
+        return economy;
+    }
+
+    private int indexOf(String name) {
+        for (int kind = 0; kind < names.length; kind++) {
+            if (names[kind].equals(name)) {
+                return kind;
+            }
+        }
+        return -1;
+    }
+
+    // The unit template that produces the given one. Several may, such as
+    // spawn points, so a kind that is wanted or already owned comes first.
+    private UnitTemplateView findProducer(StateView state, int templateId, List<Integer> preferred) {
+        UnitTemplateView found = null;
+        for (TemplateView template : state.getTemplates(playernum)) {
+            if (!(template instanceof UnitTemplateView) || !((UnitTemplateView) template).canProduce(templateId)) {
+                continue;
+            }
+            if (preferred.contains(template.getID())) {
+                return (UnitTemplateView) template;
+            }
+            if (found == null) {
+                found = (UnitTemplateView) template;
+            }
+        }
+        return found;
+    }
+
+    private static final Comparator<double[]> BY_FINISH = new Comparator<double[]>() {
+        @Override
+        public int compare(double a[], double b[]) {
+            return Double.compare(a[0], b[0]);
+        }
+    };
+
+    // The abstract state the search moves through.
+    private static class Economy {
+        double time;
+        double gold;
+        double wood;
+        int foodUsed;
+        int foodProvided;
+        // Per kind, the units done, the units done or in production, and the
+        // units busy producing something.
+        final int counts[];
+        final int started[];
+        final int busy[];
+        // Orders in production as {finish time, kind, producer kind}, soonest first.
+        final List<double[]> events;
+
+        Economy(int kinds) {
+            counts = new int[kinds];
+            started = new int[kinds];
+            busy = new int[kinds];
+            events = new ArrayList<double[]>();
+        }
+
+        Economy(Economy other) {
+            time = other.time;
+            gold = other.gold;
+            wood = other.wood;
+            foodUsed = other.foodUsed;
+            foodProvided = other.foodProvided;
+            counts = other.counts.clone();
+            started = other.started.clone();
+            busy = other.busy.clone();
+            events = new ArrayList<double[]>(other.events);
+        }
+
+        Economy copy() {
+            return new Economy(this);
+        }
+
+        void addEvent(double finish, int kind, int producer) {
+            events.add(new double[] { finish, kind, producer });
+            Collections.sort(events, BY_FINISH);
+        }
+    }
+}
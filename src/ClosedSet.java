@@ -0,0 +1,44 @@
+import java.util.Arrays;
+
+// The set of explored map cells, stored as one generation stamp per cell. A
+// cell is closed when its stamp matches the current generation, so clearing
+// the set between searches is a single increment instead of a refill.
+public class ClosedSet {
+    private int stamps[];
+    private int yExtent;
+    private int generation;
+
+    public ClosedSet(int xExtent, int yExtent) {
+        this.stamps = new int[xExtent * yExtent];
+        this.yExtent = yExtent;
+        this.generation = 1;
+    }
+
+    public boolean fits(int xExtent, int yExtent) {
+        return stamps.length == xExtent * yExtent && this.yExtent == yExtent;
+    }
+
+    public void clear() {
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    public void add(int x, int y) {
+        stamps[x * yExtent + y] = generation;
+    }
+
+    public boolean contains(int x, int y) {
+        return stamps[x * yExtent + y] == generation;
+    }
+
+    public void add(GraphNode node) {
+        add(node.x, node.y);
+    }
+
+    public boolean contains(GraphNode node) {
+        return contains(node.x, node.y);
+    }
+}
@@ -0,0 +1,209 @@
+// Which open cells of a map can reach each other. The open cells are kept in
+// a union-find structure, so whether a target can be reached from a cell is a
+// handful of lookups instead of a search that floods the whole area first.
+//
+// The labels are kept up to date as cells open and close. An opened cell gets
+// a new element joined to its open neighbours. A closed cell stays in the
+// structure, since other elements may point through it; that is only wrong if
+// closing it splits its area, and a closed cell can only split its area if its
+// open neighbours are not connected to each other around it. In that case the
+// labels are rebuilt, but only when next asked.
+public class ConnectedAreas {
+    private final int width;
+    private final int height;
+    private final boolean open[];
+
+    // Per cell, its element in the union-find, valid while the cell is open.
+    private final int elements[];
+    private int parents[];
+    private int sizes[];
+    private int count = 0;
+
+    private boolean stale = false;
+    private int relabels = 0;
+
+    public ConnectedAreas(GraphNode map[][]) {
+        width = map.length;
+        height = map[0].length;
+        open = new boolean[width * height];
+        elements = new int[width * height];
+        parents = new int[width * height];
+        sizes = new int[width * height];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                open[i * height + j] = map[i][j] != null;
+            }
+        }
+        relabel();
+    }
+
+    public void setOpen(int x, int y, boolean isOpen) {
+        int cell = x * height + y;
+        if (open[cell] == isOpen) {
+            return;
+        }
+        open[cell] = isOpen;
+        if (stale) {
+            return;
+        }
+        if (isOpen) {
+            if (count >= 4 * open.length) {
+                // Closed cells' elements pile up while no area splits; compact them.
+                stale = true;
+                return;
+            }
+            elements[cell] = add();
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                    int next = i * height + j;
+                    if (next != cell && open[next]) {
+                        union(elements[cell], elements[next]);
+                    }
+                }
+            }
+        } else if (!isLocallyConnected(x, y)) {
+            stale = true;
+        }
+    }
+
+    // True if a unit at one cell can reach a cell next to the target. The
+    // unit's own cell counts as open, as it does in the planners.
+    public boolean isReachable(GraphNode from, GraphNode target) {
+        if (Math.abs(from.x - target.x) <= 1 && Math.abs(from.y - target.y) <= 1) {
+            return true;
+        }
+        if (stale) {
+            relabel();
+        }
+        for (int i = Math.max(target.x - 1, 0); i <= Math.min(target.x + 1, width - 1); i++) {
+            for (int j = Math.max(target.y - 1, 0); j <= Math.min(target.y + 1, height - 1); j++) {
+                if (open[i * height + j] && isConnected(from, find(elements[i * height + j]))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // How many times the labels have been built from scratch.
+    public int getRelabels() {
+        return relabels;
+    }
+
+    // Whether the cell, or an open neighbour of it if it is closed, lies in the area with this root.
+    private boolean isConnected(GraphNode from, int root) {
+        int cell = from.x * height + from.y;
+        if (open[cell]) {
+            return find(elements[cell]) == root;
+        }
+        for (int i = Math.max(from.x - 1, 0); i <= Math.min(from.x + 1, width - 1); i++) {
+            for (int j = Math.max(from.y - 1, 0); j <= Math.min(from.y + 1, height - 1); j++) {
+                int next = i * height + j;
+                if (open[next] && find(elements[next]) == root) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Whether the open cells around a cell all connect to each other without
+    // passing through it, so that closing it cannot cut any path in two.
+    private boolean isLocallyConnected(int x, int y) {
+        int neighbours[] = new int[8];
+        int found = 0;
+        for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+            for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                if ((i != x || j != y) && open[i * height + j]) {
+                    neighbours[found++] = i * height + j;
+                }
+            }
+        }
+        if (found <= 1) {
+            return true;
+        }
+
+        // Flood the neighbours from the first, stepping between neighbours that touch.
+        boolean reached[] = new boolean[found];
+        int queue[] = new int[found];
+        int head = 0;
+        int tail = 0;
+        reached[0] = true;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int a = neighbours[queue[head++]];
+            for (int k = 0; k < found; k++) {
+                int b = neighbours[k];
+                if (!reached[k] && Math.abs(a / height - b / height) <= 1 && Math.abs(a % height - b % height) <= 1) {
+                    reached[k] = true;
+                    queue[tail++] = k;
+                }
+            }
+        }
+        return tail == found;
+    }
+
+    // Builds the labels from scratch in one pass, joining each open cell to
+    // the open neighbours already passed.
+    private void relabel() {
+        count = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int cell = x * height + y;
+                if (!open[cell]) {
+                    continue;
+                }
+                elements[cell] = add();
+                if (x > 0) {
+                    for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                        if (open[(x - 1) * height + j]) {
+                            union(elements[cell], elements[(x - 1) * height + j]);
+                        }
+                    }
+                }
+                if (y > 0 && open[cell - 1]) {
+                    union(elements[cell], elements[cell - 1]);
+                }
+            }
+        }
+        stale = false;
+        relabels++;
+    }
+
+    private int add() {
+        if (count == parents.length) {
+            int grown[] = new int[count * 2];
+            System.arraycopy(parents, 0, grown, 0, count);
+            parents = grown;
+            grown = new int[count * 2];
+            System.arraycopy(sizes, 0, grown, 0, count);
+            sizes = grown;
+        }
+        parents[count] = count;
+        sizes[count] = 1;
+        return count++;
+    }
+
+    private int find(int element) {
+        while (parents[element] != element) {
+            parents[element] = parents[parents[element]];
+            element = parents[element];
+        }
+        return element;
+    }
+
+    private void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) {
+            return;
+        }
+        if (sizes[a] < sizes[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parents[b] = a;
+        sizes[a] += sizes[b];
+    }
+}
@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Windowed cooperative A* (WHCA*) for many units at once. The units are
+// planned one after another in space and time against a shared reservation
+// table, so no two plans hold the same cell at the same step. Each search
+// looks only a fixed number of steps ahead, waiting in place is a legal move,
+// and the heuristic is the true distance to the target ring on the static map,
+// read from a FlowField shared by every unit with that target, so a plan cut
+// off by the window still heads the right way. Re-planning every turn, with
+// the planning order rotated, keeps the plans fresh and stops any unit from
+// always yielding.
+public class CooperativePlanner {
+    private final int window;
+    private int width = 0;
+    private int height = 0;
+    private int cells = 0;
+    private int calls = 0;
+    private int expansions = 0;
+    private int generated = 0;
+    private int peakOpenSize = 0;
+
+    // Reservation table over (step, cell): which unit holds it in this round.
+    private int reservedIn[];
+    private int holders[];
+    private int round = 0;
+
+    // Search state over (step, cell). Every move costs one step, so the first
+    // time a state is reached is already the cheapest and needs no updates.
+    private int seen[];
+    private int parents[];
+    private int heap[];
+    private int size;
+    private int generation = 0;
+    private int distances[];
+
+    // Distances to each target's ring, kept until the map version moves.
+    private Map<GraphNode, FlowField> fields = new HashMap<GraphNode, FlowField>();
+    private int fieldsVersion = -1;
+
+    public CooperativePlanner(int window) {
+        this.window = window;
+    }
+
+    // Plans the next steps of every unit towards its target. The result maps
+    // each unit to the cells it will stand on from the next step on, up to the
+    // window, where a repeated cell means waiting. A unit next to its target
+    // gets an empty list, and one that cannot reach its target gets null. The
+    // version must move whenever the map does, as OccupancyGrid's does.
+    public Map<Integer, List<GraphNode>> plan(GraphNode map[][], int version, Map<Integer, GraphNode> starts,
+            Map<Integer, GraphNode> targets) {
+        prepare(map.length, map[0].length);
+        if (version != fieldsVersion) {
+            fields.clear();
+            fieldsVersion = version;
+        }
+        expansions = 0;
+        generated = 0;
+        peakOpenSize = 0;
+
+        List<Integer> order = new ArrayList<Integer>(starts.keySet());
+        if (!order.isEmpty()) {
+            Collections.rotate(order, -(calls++ % order.size()));
+        }
+
+        // Every unit holds its own cell at step 0, so nobody steps into a cell
+        // as it is being left; SEPIA carries out a turn's moves one at a time.
+        for (int unit = 0; unit < order.size(); unit++) {
+            GraphNode start = starts.get(order.get(unit));
+            reserve(0, start.x * height + start.y, unit);
+        }
+
+        Map<Integer, List<GraphNode>> plans = new LinkedHashMap<Integer, List<GraphNode>>();
+        for (int unit = 0; unit < order.size(); unit++) {
+            int id = order.get(unit);
+            GraphNode start = starts.get(id);
+            GraphNode target = targets.get(id);
+            FlowField field = fields.get(target);
+            if (field == null) {
+                field = new FlowField(map, target);
+                fields.put(target, field);
+            }
+            distances = field.getDistances();
+            plans.put(id, planUnit(map, start.x * height + start.y, unit));
+        }
+        return plans;
+    }
+
+    // The nodes expanded by all the searches of the last call to plan.
+    public int getExpansions() {
+        return expansions;
+    }
+
+    // The states queued by all the searches of the last call to plan.
+    public int getGenerated() {
+        return generated;
+    }
+
+    // The most states any one search of the last call to plan held queued at once.
+    public int getPeakOpenSize() {
+        return peakOpenSize;
+    }
+
+    private List<GraphNode> planUnit(GraphNode map[][], int start, int unit) {
+        if (distances[start] >= FlowField.UNREACHABLE) {
+            holdCell(start, unit);
+            return null;
+        }
+
+        generation++;
+        size = 0;
+        seen[start] = generation;
+        parents[start] = -1;
+        push(start);
+        while (size > 0) {
+            int state = poll();
+            int step = state / cells;
+            int cell = state % cells;
+            if ((distances[cell] == 0 && canStay(step, cell, unit)) || step == window) {
+                return reservePath(map, state, unit);
+            }
+            expansions++;
+
+            int x = cell / height;
+            int y = cell % height;
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                    int next = i * height + j;
+                    int nextState = (step + 1) * cells + next;
+                    if (map[i][j] == null || seen[nextState] == generation || !canEnter(step, next, unit)) {
+                        continue;
+                    }
+                    seen[nextState] = generation;
+                    parents[nextState] = state;
+                    push(nextState);
+                }
+            }
+        }
+
+        // Boxed in by the other plans for the whole window.
+        holdCell(start, unit);
+        List<GraphNode> path = new ArrayList<GraphNode>();
+        path.add(map[start / height][start % height]);
+        return path;
+    }
+
+    // A unit may stand on a cell at the next step if no other unit holds it
+    // then or now.
+    private boolean canEnter(int step, int cell, int unit) {
+        return isFree(step, cell, unit) && isFree(step + 1, cell, unit);
+    }
+
+    // A unit that reaches its target ring stays there for the rest of the window.
+    private boolean canStay(int step, int cell, int unit) {
+        for (int i = step; i <= window; i++) {
+            if (!isFree(i, cell, unit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<GraphNode> reservePath(GraphNode map[][], int goal, int unit) {
+        int end = goal / cells;
+        int cell = goal % cells;
+        for (int step = end; step <= window; step++) {
+            reserve(step, cell, unit);
+        }
+
+        GraphNode path[] = new GraphNode[end];
+        for (int state = goal; parents[state] >= 0; state = parents[state]) {
+            cell = state % cells;
+            reserve(state / cells, cell, unit);
+            path[state / cells - 1] = map[cell / height][cell % height];
+        }
+        return new ArrayList<GraphNode>(Arrays.asList(path));
+    }
+
+    // Keeps a unit that cannot move where it is for as long as nobody else needs the cell.
+    private void holdCell(int cell, int unit) {
+        for (int step = 0; step <= window && isFree(step, cell, unit); step++) {
+            reserve(step, cell, unit);
+        }
+    }
+
+    private boolean isFree(int step, int cell, int unit) {
+        int index = step * cells + cell;
+        return reservedIn[index] != round || holders[index] == unit;
+    }
+
+    private void reserve(int step, int cell, int unit) {
+        int index = step * cells + cell;
+        reservedIn[index] = round;
+        holders[index] = unit;
+    }
+
+    // Sizes the tables for the map, keeping them if they already fit, and clears the reservations.
+    private void prepare(int width, int height) {
+        if (seen == null || this.width != width || this.height != height) {
+            this.width = width;
+            this.height = height;
+            this.cells = width * height;
+            int states = (window + 1) * cells;
+            reservedIn = new int[states];
+            holders = new int[states];
+            seen = new int[states];
+            parents = new int[states];
+            heap = new int[states];
+            fields.clear();
+            round = 0;
+            generation = 0;
+        }
+        round++;
+    }
+
+    private void push(int state) {
+        generated++;
+        peakOpenSize = Math.max(peakOpenSize, size + 1);
+        int index = size++;
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!lessThan(state, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = state;
+    }
+
+    private int poll() {
+        int first = heap[0];
+        int last = heap[--size];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && lessThan(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!lessThan(heap[child], last)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = last;
+        return first;
+    }
+
+    // Orders by steps taken plus steps left, preferring the state furthest along on ties.
+    private boolean lessThan(int a, int b) {
+        int stepA = a / cells;
+        int stepB = b / cells;
+        int fA = stepA + distances[a % cells];
+        int fB = stepB + distances[b % cells];
+        if (fA != fB) {
+            return fA < fB;
+        }
+        return stepA > stepB;
+    }
+}
@@ -0,0 +1,307 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+
+// Incremental replanning with D* Lite. The search runs backwards from the
+// cells around the target and keeps its g and rhs values between queries, so
+// when the unit moves or cells change occupancy only the vertices whose
+// distances actually changed are expanded again.
+public class DStarLite implements PathPlanner {
+    private static final AgentLog.Site UNREACHABLE = new AgentLog.Site("DStarLite", Level.INFO, 10);
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    private int width;
+    private int height;
+    private boolean blocked[];
+    private int g[];
+    private int rhs[];
+    private GraphNode target;
+    private GraphNode start;
+    private GraphNode lastStart;
+    private int km;
+    private int expansions = 0;
+    private int generated = 0;
+    private int peakOpenSize = 0;
+
+    // Indexed binary heap of inconsistent cells ordered by their two-part key.
+    private int heap[];
+    private int heapIndex[];
+    private int primaryKey[];
+    private int secondaryKey[];
+    private int size;
+
+    // Starts a new search on the given map, discarding any previous state.
+    @Override
+    public List<GraphNode> getPathToTarget(GraphNode map[][], GraphNode initial, GraphNode target) {
+        width = map.length;
+        height = map[0].length;
+        int cells = width * height;
+        blocked = new boolean[cells];
+        g = new int[cells];
+        rhs = new int[cells];
+        heap = new int[cells];
+        heapIndex = new int[cells];
+        primaryKey = new int[cells];
+        secondaryKey = new int[cells];
+        size = 0;
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        Arrays.fill(heapIndex, -1);
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                blocked[index(i, j)] = map[i][j] == null;
+            }
+        }
+        blocked[index(initial.x, initial.y)] = false;
+
+        this.target = new GraphNode(target.x, target.y);
+        this.start = new GraphNode(initial.x, initial.y);
+        this.lastStart = this.start;
+        this.km = 0;
+        for (int i = target.x - 1; i <= target.x + 1; i++) {
+            for (int j = target.y - 1; j <= target.y + 1; j++) {
+                if (inBounds(i, j) && !blocked[index(i, j)]) {
+                    rhs[index(i, j)] = 0;
+                    insert(index(i, j));
+                }
+            }
+        }
+        return getPath();
+    }
+
+    // Moves the search start to the unit's new position.
+    public void setStart(GraphNode position) {
+        if (position.equals(start)) {
+            return;
+        }
+        start = new GraphNode(position.x, position.y);
+        km += lastStart.distance(start);
+        lastStart = start;
+    }
+
+    // Records that a cell became occupied or free, and re-evaluates the cell and its neighbours.
+    public void setCellOpen(int x, int y, boolean open) {
+        int cell = index(x, y);
+        if (blocked[cell] != open) {
+            return;
+        }
+        blocked[cell] = !open;
+        for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+            for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                updateVertex(index(i, j));
+            }
+        }
+    }
+
+    // Brings the search up to date and follows the cheapest neighbours from the
+    // start to the target. Returns null if the target cannot be reached.
+    public List<GraphNode> getPath() {
+        expansions = 0;
+        generated = 0;
+        peakOpenSize = size;
+        computeShortestPath();
+        int current = index(start.x, start.y);
+        if (g[current] >= INFINITY) {
+            UNREACHABLE.log("Target (%d, %d) is unreachable from position (%d, %d).",
+                    target.x, target.y, start.x, start.y);
+            return null;
+        }
+
+        List<GraphNode> path = new ArrayList<>();
+        int x = start.x;
+        int y = start.y;
+        while (g[current] > 0) {
+            int best = -1;
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                    int next = index(i, j);
+                    if (next != current && !blocked[next] && (best < 0 || g[next] < g[best])) {
+                        best = next;
+                    }
+                }
+            }
+            if (best < 0 || g[best] >= g[current]) {
+                return null;
+            }
+            current = best;
+            x = current / height;
+            y = current % height;
+            path.add(new GraphNode(x, y));
+        }
+        return path;
+    }
+
+    // Counts the vertices processed to bring the last query up to date.
+    @Override
+    public int getExpansions() {
+        return expansions;
+    }
+
+    // The cells queued and the largest the queue grew, like the expansions.
+    @Override
+    public int getGenerated() {
+        return generated;
+    }
+
+    @Override
+    public int getPeakOpenSize() {
+        return peakOpenSize;
+    }
+
+    private void computeShortestPath() {
+        int startCell = index(start.x, start.y);
+        while (size > 0 && (compareKeys(heap[0], getPrimaryKey(startCell), getSecondaryKey(startCell)) < 0
+                || rhs[startCell] != g[startCell])) {
+            int u = heap[0];
+            expansions++;
+            int oldPrimary = primaryKey[u];
+            int oldSecondary = secondaryKey[u];
+            int newPrimary = getPrimaryKey(u);
+            int newSecondary = getSecondaryKey(u);
+            if (oldPrimary < newPrimary || (oldPrimary == newPrimary && oldSecondary < newSecondary)) {
+                primaryKey[u] = newPrimary;
+                secondaryKey[u] = newSecondary;
+                siftDown(0);
+            } else if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                remove(u);
+                updateNeighbours(u);
+            } else {
+                g[u] = INFINITY;
+                updateVertex(u);
+                updateNeighbours(u);
+            }
+        }
+    }
+
+    private void updateNeighbours(int cell) {
+        int x = cell / height;
+        int y = cell % height;
+        for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+            for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                if (i != x || j != y) {
+                    updateVertex(index(i, j));
+                }
+            }
+        }
+    }
+
+    private void updateVertex(int cell) {
+        int x = cell / height;
+        int y = cell % height;
+        if (blocked[cell]) {
+            rhs[cell] = INFINITY;
+        } else if (isGoal(x, y)) {
+            rhs[cell] = 0;
+        } else {
+            int best = INFINITY;
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                    int next = index(i, j);
+                    if (next != cell && !blocked[next] && g[next] + 1 < best) {
+                        best = g[next] + 1;
+                    }
+                }
+            }
+            rhs[cell] = best;
+        }
+
+        if (heapIndex[cell] >= 0) {
+            remove(cell);
+        }
+        if (g[cell] != rhs[cell]) {
+            insert(cell);
+        }
+    }
+
+    private int getPrimaryKey(int cell) {
+        int x = cell / height;
+        int y = cell % height;
+        int cost = Math.min(g[cell], rhs[cell]);
+        return cost >= INFINITY ? INFINITY : cost + Math.max(Math.abs(x - start.x), Math.abs(y - start.y)) + km;
+    }
+
+    private int getSecondaryKey(int cell) {
+        return Math.min(g[cell], rhs[cell]);
+    }
+
+    private int compareKeys(int cell, int primary, int secondary) {
+        if (primaryKey[cell] != primary) {
+            return primaryKey[cell] < primary ? -1 : 1;
+        }
+        return Integer.compare(secondaryKey[cell], secondary);
+    }
+
+    private void insert(int cell) {
+        primaryKey[cell] = getPrimaryKey(cell);
+        secondaryKey[cell] = getSecondaryKey(cell);
+        heap[size] = cell;
+        heapIndex[cell] = size;
+        siftUp(size++);
+        generated++;
+        peakOpenSize = Math.max(peakOpenSize, size);
+    }
+
+    private void remove(int cell) {
+        int index = heapIndex[cell];
+        heapIndex[cell] = -1;
+        size--;
+        if (index == size) {
+            return;
+        }
+        int moved = heap[size];
+        heap[index] = moved;
+        heapIndex[moved] = index;
+        siftUp(index);
+        siftDown(heapIndex[moved]);
+    }
+
+    private void siftUp(int index) {
+        int cell = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (compareKeys(cell, primaryKey[heap[parent]], secondaryKey[heap[parent]]) >= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heapIndex[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = cell;
+        heapIndex[cell] = index;
+    }
+
+    private void siftDown(int index) {
+        int cell = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && compareKeys(heap[child + 1], primaryKey[heap[child]], secondaryKey[heap[child]]) < 0) {
+                child++;
+            }
+            if (compareKeys(heap[child], primaryKey[cell], secondaryKey[cell]) >= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            heapIndex[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = cell;
+        heapIndex[cell] = index;
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    private boolean isGoal(int x, int y) {
+        return Math.abs(x - target.x) <= 1 && Math.abs(y - target.y) <= 1;
+    }
+
+    private int index(int x, int y) {
+        return x * height + y;
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Arrays;
+
+// A Dijkstra map towards one target. A single breadth-first search out from
+// the open cells around the target gives every cell its number of steps to
+// that ring and the neighbour to step to next, so any number of units heading
+// for the same target can each find their next move in O(1) instead of running
+// a search apiece. Moves all cost one step, so breadth-first order is Dijkstra
+// order. Units are not part of the map, so the field does not steer them
+// around each other.
+public class FlowField {
+    public static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+
+    private final GraphNode target;
+    private final int width;
+    private final int height;
+    private int expansions = 0;
+    private int peakOpenSize = 0;
+
+    // Per cell, indexed by x * height + y: steps to the ring, and the move
+    // towards it encoded as (dx + 1) * 3 + (dy + 1).
+    private final int distances[];
+    private final byte steps[];
+
+    public FlowField(GraphNode map[][], GraphNode target) {
+        this.target = new GraphNode(target.x, target.y);
+        this.width = map.length;
+        this.height = map[0].length;
+        this.distances = new int[width * height];
+        this.steps = new byte[width * height];
+        Arrays.fill(distances, UNREACHABLE);
+
+        int queue[] = new int[width * height];
+        int head = 0;
+        int tail = 0;
+        for (int i = Math.max(target.x - 1, 0); i <= Math.min(target.x + 1, width - 1); i++) {
+            for (int j = Math.max(target.y - 1, 0); j <= Math.min(target.y + 1, height - 1); j++) {
+                if (map[i][j] != null) {
+                    distances[i * height + j] = 0;
+                    steps[i * height + j] = 4;
+                    queue[tail++] = i * height + j;
+                }
+            }
+        }
+        while (head < tail) {
+            peakOpenSize = Math.max(peakOpenSize, tail - head);
+            int cell = queue[head++];
+            int x = cell / height;
+            int y = cell % height;
+            expansions++;
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                    int next = i * height + j;
+                    if (map[i][j] != null && distances[next] == UNREACHABLE) {
+                        distances[next] = distances[cell] + 1;
+                        steps[next] = (byte) ((x - i + 1) * 3 + (y - j + 1));
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+    }
+
+    public GraphNode getTarget() {
+        return target;
+    }
+
+    // The steps from a cell to the ring around the target, 0 on the ring
+    // itself, or UNREACHABLE.
+    public int getDistance(int x, int y) {
+        return distances[x * height + y];
+    }
+
+    public boolean isReachable(int x, int y) {
+        return distances[x * height + y] < UNREACHABLE;
+    }
+
+    // The x and y offsets of the next step from a reachable cell off the ring.
+    public int getStepX(int x, int y) {
+        return steps[x * height + y] / 3 - 1;
+    }
+
+    public int getStepY(int x, int y) {
+        return steps[x * height + y] % 3 - 1;
+    }
+
+    // Every distance at once, indexed by x * height + y, for searches that
+    // use the field as their heuristic. Must not be modified.
+    int[] getDistances() {
+        return distances;
+    }
+
+    // The cells the search settled, each of which it queued exactly once.
+    public int getExpansions() {
+        return expansions;
+    }
+
+    // The most cells the search's queue held at once.
+    public int getPeakOpenSize() {
+        return peakOpenSize;
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cwru.sepia.environment.model.state.ResourceNode.ResourceView;
+import edu.cwru.sepia.environment.model.state.ResourceNode.Type;
+import edu.cwru.sepia.environment.model.state.ResourceType;
+import edu.cwru.sepia.environment.model.state.State.StateView;
+import edu.cwru.sepia.environment.model.state.Unit.UnitView;
+import edu.cwru.sepia.environment.model.state.UnitTemplate.UnitTemplateView;
+
+// Decides which resource node each peasant gathers from. A peasant brings in
+// one load per round trip between the town hall and its node, so a node is
+// valued by that round trip in turns. A node has room for as many peasants as
+// it has free cells around it, each cell a place with its own walk to the
+// town hall, and the places with the shortest round trips are handed out
+// first.
+//
+// The peasants are split between gold and wood so that the gold and wood
+// still wanted both come in as early as possible, which is when they come in
+// together. The split is worked out again at every call as the amounts wanted
+// change, but peasants are only moved from what they were gathering when that
+// gains more than their walk costs.
+public class GatherScheduler {
+    private static final Comparator<int[]> BY_ROUND_TRIP = new Comparator<int[]>() {
+        @Override
+        public int compare(int a[], int b[]) {
+            return Integer.compare(a[1], b[1]);
+        }
+    };
+
+    private final ResourceIndex resources;
+
+    // The largest load seen carried of each type. The gather rates in the
+    // templates are not visible to agents; until a load is seen, types count
+    // as carrying the same.
+    private final Map<Type, Integer> loads = new HashMap<Type, Integer>();
+    // What each peasant was sent to gather by the last call.
+    private Map<Integer, Type> lastTypes = new HashMap<Integer, Type>();
+
+    public GatherScheduler(ResourceIndex resources) {
+        this.resources = resources;
+    }
+
+    // The node, by ID, each peasant should gather from. A peasant is left out
+    // if no node of either type is left.
+    public Map<Integer, Integer> assign(StateView state, List<Integer> peasantIds, int townhallId,
+            int goldWanted, int woodWanted) {
+        Map<Integer, Integer> assignment = new HashMap<Integer, Integer>();
+        if (peasantIds.isEmpty()) {
+            return assignment;
+        }
+        UnitView townhall = state.getUnit(townhallId);
+
+        // Loads on their way to the town hall are as good as deposited.
+        for (int id : peasantIds) {
+            UnitView peasant = state.getUnit(id);
+            if (peasant.getCargoAmount() > 0) {
+                Type type = peasant.getCargoType() == ResourceType.GOLD ? Type.GOLD_MINE : Type.TREE;
+                loads.put(type, Math.max(getLoad(type), peasant.getCargoAmount()));
+                if (type == Type.GOLD_MINE) {
+                    goldWanted -= peasant.getCargoAmount();
+                } else {
+                    woodWanted -= peasant.getCargoAmount();
+                }
+            }
+        }
+        goldWanted = Math.max(goldWanted, 0);
+        woodWanted = Math.max(woodWanted, 0);
+
+        int n = peasantIds.size();
+        UnitTemplateView template = state.getUnit(peasantIds.get(0)).getTemplateView();
+        List<int[]> goldSlots = getSlots(state, Type.GOLD_MINE, townhall, n, template);
+        List<int[]> woodSlots = getSlots(state, Type.TREE, townhall, n, template);
+
+        // Try every number of peasants on wood for the one that finishes
+        // first. A peasant moved to the other resource loses about one round
+        // trip, shared among all the peasants, so a split that moves peasants
+        // has to beat the others by that much; the amounts wanted shift with
+        // every deposit, and this keeps peasants from turning back mid-walk.
+        double switchTurns = Math.max(goldSlots.isEmpty() ? 0 : goldSlots.get(0)[1],
+                woodSlots.isEmpty() ? 0 : woodSlots.get(0)[1]) / (double) n;
+        int bestWood = -1;
+        double bestTime = 0;
+        for (int wood = 0; wood <= n; wood++) {
+            if ((wood > 0 && woodSlots.isEmpty()) || (wood < n && goldSlots.isEmpty())) {
+                continue;
+            }
+            double time = Math.max(getTime(goldWanted, goldSlots, n - wood, getLoad(Type.GOLD_MINE)),
+                    getTime(woodWanted, woodSlots, wood, getLoad(Type.TREE)))
+                    + countMoves(peasantIds, wood) * switchTurns;
+            if (bestWood < 0 || time < bestTime) {
+                bestWood = wood;
+                bestTime = time;
+            }
+        }
+        if (bestWood < 0) {
+            lastTypes.clear();
+            return assignment;
+        }
+
+        // The peasants already on wood go back to wood first, then those that
+        // were on nothing, then those on gold.
+        List<Integer> woodPeasants = new ArrayList<Integer>();
+        List<Integer> goldPeasants = new ArrayList<Integer>();
+        for (Type preferred : new Type[] { Type.TREE, null, Type.GOLD_MINE }) {
+            for (int id : peasantIds) {
+                if (lastTypes.get(id) == preferred) {
+                    (woodPeasants.size() < bestWood ? woodPeasants : goldPeasants).add(id);
+                }
+            }
+        }
+        Map<Integer, Type> types = new HashMap<Integer, Type>();
+        place(state, woodPeasants, woodSlots, Type.TREE, assignment, types);
+        place(state, goldPeasants, goldSlots, Type.GOLD_MINE, assignment, types);
+        lastTypes = types;
+        return assignment;
+    }
+
+    // The resources per turn each further peasant on a type would bring in,
+    // best place first, for up to count peasants.
+    public double[] getRates(StateView state, int townhallId, Type type, int count, UnitTemplateView template) {
+        List<int[]> slots = getSlots(state, type, state.getUnit(townhallId), count, template);
+        double rates[] = new double[slots.size()];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = (double) getLoad(type) / slots.get(i)[1];
+        }
+        return rates;
+    }
+
+    private int getLoad(Type type) {
+        Integer load = loads.get(type);
+        return load == null ? 100 : load;
+    }
+
+    // The places to gather a type, as {node ID, round trip in turns}, shortest
+    // round trip first. Each free cell around a node is a place, and its round
+    // trip is the walk from it to a cell next to the town hall and back, plus
+    // the turns to gather and to deposit. No more than count are needed.
+    private List<int[]> getSlots(StateView state, Type type, UnitView townhall, int count,
+            UnitTemplateView template) {
+        int x = townhall.getXPosition();
+        int y = townhall.getYPosition();
+        int gather = type == Type.GOLD_MINE ? template.getDurationGatherGold() : template.getDurationGatherWood();
+        List<int[]> slots = new ArrayList<int[]>();
+        for (int id : resources.getNearest(type, x, y, count)) {
+            ResourceView node = state.getResourceNode(id);
+            for (int i = node.getXPosition() - 1; i <= node.getXPosition() + 1; i++) {
+                for (int j = node.getYPosition() - 1; j <= node.getYPosition() + 1; j++) {
+                    if (isFree(state, i, j)) {
+                        int walk = Math.max(Math.max(Math.abs(i - x), Math.abs(j - y)) - 1, 0);
+                        slots.add(new int[] { id, 2 * walk * template.getDurationMove() + gather
+                                + template.getDurationDeposit() });
+                    }
+                }
+            }
+        }
+        Collections.sort(slots, BY_ROUND_TRIP);
+        return slots.size() > count ? new ArrayList<int[]>(slots.subList(0, count)) : slots;
+    }
+
+    // Whether a peasant could stand on a cell to gather from a node next to it.
+    private static boolean isFree(StateView state, int x, int y) {
+        if (!state.inBounds(x, y) || state.isResourceAt(x, y)) {
+            return false;
+        }
+        Integer unit = state.unitAt(x, y);
+        return unit == null || state.getUnit(unit).getTemplateView().canMove();
+    }
+
+    // The turns for the given number of peasants in the best places to bring
+    // in the amount wanted. Peasants beyond the places there are add nothing.
+    private static double getTime(int wanted, List<int[]> slots, int peasants, int load) {
+        if (wanted == 0) {
+            return 0;
+        }
+        double rate = 0;
+        for (int i = 0; i < Math.min(peasants, slots.size()); i++) {
+            rate += (double) load / slots.get(i)[1];
+        }
+        return rate == 0 ? Double.POSITIVE_INFINITY : wanted / rate;
+    }
+
+    // How many peasants would change type if this many were on wood.
+    private int countMoves(List<Integer> peasantIds, int wood) {
+        int wasWood = 0;
+        int wasGold = 0;
+        for (int id : peasantIds) {
+            Type type = lastTypes.get(id);
+            if (type == Type.TREE) {
+                wasWood++;
+            } else if (type == Type.GOLD_MINE) {
+                wasGold++;
+            }
+        }
+        return Math.max(wasWood - wood, 0) + Math.max(wasGold - (peasantIds.size() - wood), 0);
+    }
+
+    // Gives each place in turn to the nearest peasant still without one. Any
+    // peasants left over queue at the best place.
+    private static void place(StateView state, List<Integer> peasants, List<int[]> slots, Type type,
+            Map<Integer, Integer> assignment, Map<Integer, Type> types) {
+        List<Integer> left = new ArrayList<Integer>(peasants);
+        for (int slot[] : slots) {
+            if (left.isEmpty()) {
+                break;
+            }
+            ResourceView node = state.getResourceNode(slot[0]);
+            int nearest = 0;
+            int nearestDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < left.size(); i++) {
+                UnitView peasant = state.getUnit(left.get(i));
+                int distance = Math.max(Math.abs(peasant.getXPosition() - node.getXPosition()),
+                        Math.abs(peasant.getYPosition() - node.getYPosition()));
+                if (distance < nearestDistance) {
+                    nearest = i;
+                    nearestDistance = distance;
+                }
+            }
+            int id = left.remove(nearest);
+            assignment.put(id, slot[0]);
+            types.put(id, type);
+        }
+        for (int id : left) {
+            assignment.put(id, slots.get(0)[0]);
+            types.put(id, type);
+        }
+    }
+}
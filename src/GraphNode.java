@@ -7,4 +7,34 @@ public class GraphNode {
 		this.x = x;
 		this.y = y;
 	}
+
+	// The number of moves between two cells on the 8-connected grid.
+	public int distance(GraphNode other) {
+		return Math.max(Math.abs(x - other.x), Math.abs(y - other.y));
+	}
+
+	// Two nodes are equal when they refer to the same map cell, so nodes can
+	// be used as map keys. Do not move a node while it is being used as a key.
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof GraphNode)) {
+			return false;
+		}
+		GraphNode node = (GraphNode) other;
+		return x == node.x && y == node.y;
+	}
+
+	// Distinct for every cell of a map under 65536 cells a side.
+	@Override
+	public int hashCode() {
+		return (x << 16) ^ y;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("(%d, %d)", x, y);
+	}
 }
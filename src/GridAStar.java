@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+// A* whose per-cell state lives in primitive arrays indexed by cell, sized to
+// the map and reused from query to query. Nothing is allocated per node: the
+// open set is an indexed binary heap of cell indices, and a generation stamp
+// tells which entries belong to the current query, so clearing is O(1). Only
+// the returned path is allocated.
+//
+// Given a weight w above 1, it runs weighted A* instead, with f = g + w * h.
+// The heuristic is the Chebyshev distance to the ring around the target, which
+// never overestimates, so every path costs at most w times the optimal, while
+// the search heads for the target far more greedily.
+public class GridAStar implements PathPlanner {
+    private static final AgentLog.Site UNREACHABLE = new AgentLog.Site("GridAStar", Level.INFO, 10);
+    private final double weight;
+    private int width = 0;
+    private int height = 0;
+    private int generation = 0;
+    private int expansions = 0;
+    private int generated = 0;
+    private int peakOpenSize = 0;
+
+    // Per cell: the query that last reached it, cost so far, f = g + h, parent cell,
+    // position in the heap (-1 once closed).
+    private int seen[];
+    private int costs[];
+    private double estimates[];
+    private int parents[];
+    private int heapIndex[];
+
+    private int heap[];
+    private int size;
+
+    public GridAStar() {
+        this(1.0);
+    }
+
+    public GridAStar(double weight) {
+        this.weight = Math.max(weight, 1.0);
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    @Override
+    public List<GraphNode> getPathToTarget(GraphNode map[][], GraphNode initial, GraphNode target) {
+        prepare(map.length, map[0].length);
+        expansions = 0;
+        generated = 0;
+        peakOpenSize = 0;
+
+        int start = initial.x * height + initial.y;
+        reach(start, 0, -1, target);
+        while (size > 0) {
+            int cell = poll();
+            int x = cell / height;
+            int y = cell % height;
+            if (Math.abs(x - target.x) <= 1 && Math.abs(y - target.y) <= 1) {
+                return collectPath(map, cell);
+            }
+            expansions++;
+
+            int cost = costs[cell] + 1;
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                    if (map[i][j] == null) {
+                        continue;
+                    }
+                    int next = i * height + j;
+                    if (seen[next] != generation) {
+                        reach(next, cost, cell, target);
+                    } else if (heapIndex[next] >= 0 && cost < costs[next]) {
+                        estimates[next] -= costs[next] - cost;
+                        costs[next] = cost;
+                        parents[next] = cell;
+                        siftUp(heapIndex[next]);
+                    }
+                }
+            }
+        }
+
+        UNREACHABLE.log("Target (%d, %d) is unreachable from position (%d, %d).",
+                target.x, target.y, initial.x, initial.y);
+        return null;
+    }
+
+    @Override
+    public int getExpansions() {
+        return expansions;
+    }
+
+    @Override
+    public int getGenerated() {
+        return generated;
+    }
+
+    @Override
+    public int getPeakOpenSize() {
+        return peakOpenSize;
+    }
+
+    // Sizes the arrays for the map, keeping them if they already fit, and starts a new generation.
+    private void prepare(int width, int height) {
+        if (seen == null || this.width != width || this.height != height) {
+            int cells = width * height;
+            this.width = width;
+            this.height = height;
+            seen = new int[cells];
+            costs = new int[cells];
+            estimates = new double[cells];
+            parents = new int[cells];
+            heapIndex = new int[cells];
+            heap = new int[cells];
+            generation = 0;
+        }
+        generation++;
+        size = 0;
+    }
+
+    private void reach(int cell, int cost, int parent, GraphNode target) {
+        int x = cell / height;
+        int y = cell % height;
+        seen[cell] = generation;
+        costs[cell] = cost;
+        estimates[cell] = cost + weight * Math.max(Math.max(Math.abs(x - target.x), Math.abs(y - target.y)) - 1, 0);
+        parents[cell] = parent;
+        heap[size] = cell;
+        heapIndex[cell] = size;
+        siftUp(size++);
+        generated++;
+        peakOpenSize = Math.max(peakOpenSize, size);
+    }
+
+    private int poll() {
+        int first = heap[0];
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            heapIndex[heap[0]] = 0;
+            siftDown(0);
+        }
+        heapIndex[first] = -1;
+        return first;
+    }
+
+    private void siftUp(int index) {
+        int cell = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!lessThan(cell, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heapIndex[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = cell;
+        heapIndex[cell] = index;
+    }
+
+    private void siftDown(int index) {
+        int cell = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && lessThan(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!lessThan(heap[child], cell)) {
+                break;
+            }
+            heap[index] = heap[child];
+            heapIndex[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = cell;
+        heapIndex[cell] = index;
+    }
+
+    // Orders by f, preferring the cell furthest along on ties.
+    private boolean lessThan(int a, int b) {
+        if (estimates[a] != estimates[b]) {
+            return estimates[a] < estimates[b];
+        }
+        return costs[a] > costs[b];
+    }
+
+    private List<GraphNode> collectPath(GraphNode map[][], int goal) {
+        List<GraphNode> path = new ArrayList<>(costs[goal]);
+        for (int cell = goal; parents[cell] >= 0; cell = parents[cell]) {
+            path.add(map[cell / height][cell % height]);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+}
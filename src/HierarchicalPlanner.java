@@ -0,0 +1,688 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+
+// Hierarchical path planning (HPA*). The map is split into square clusters and
+// the cells where neighbouring clusters meet become entrance nodes of an
+// abstract graph, with the in-cluster distances between entrances computed
+// once per map. A query links the start and the cells around the target into
+// that graph, searches it, and refines each abstract edge with a search
+// bounded to a single cluster. Paths are close to, but not always, optimal.
+//
+// The abstraction serves every query on the same map. When cells change, the
+// clusters holding them are marked through setCellOpen, and the next query
+// scans again only the borders of those clusters and links again only the
+// clusters whose entrances or cells changed.
+public class HierarchicalPlanner implements PathPlanner, MapListener {
+    private static final AgentLog.Site UNREACHABLE = new AgentLog.Site("HierarchicalPlanner", Level.INFO, 10);
+    // Unless a size is given, clusters are sized so that about this many
+    // span the longer side of the map, and no smaller than the minimum. The
+    // abstract graph then holds about as many clusters on any large map, and
+    // a long query expands a few hundred of its nodes.
+    private static final int CLUSTERS_ACROSS = 16;
+    private static final int MIN_CLUSTER_SIZE = 10;
+
+    // Entrances wider than this get a node at both ends instead of the middle.
+    private static final int WIDE_ENTRANCE = 6;
+
+    // The borders each cluster owns: the one to its east, the one to its
+    // south, and the point where it meets the clusters east, south and
+    // south-east of it. A border is numbered cluster * BORDERS + kind.
+    private static final int EAST = 0;
+    private static final int SOUTH = 1;
+    private static final int CORNER = 2;
+    private static final int BORDERS = 3;
+
+    // The cluster size asked for, or 0 to size clusters by the map, and the
+    // size of the current abstraction.
+    private final int fixedClusterSize;
+    private int clusterSize;
+
+    // The abstraction and the map it was built for. A node that is removed
+    // leaves null in nodes until its number is reused.
+    private GraphNode abstracted[][] = null;
+    private Set<Integer> changedClusters = new TreeSet<>();
+    private int clustersX;
+    private int clustersY;
+    private int nodeIndex[][];
+    private List<GraphNode> nodes;
+    private List<List<int[]>> edges;
+    private List<List<Integer>> clusterNodes;
+    private List<Integer> freeNodes;
+    // How many crossings each node is an end of, and the crossings of each
+    // border as pairs of nodes.
+    private int crossings[];
+    private List<List<int[]>> borderCrossings;
+
+    // The costs and parents of the abstract search, and the costs from
+    // entrances to the goal, valid where their stamp matches the query.
+    private int costs[] = new int[0];
+    private int parents[] = new int[0];
+    private int stamps[] = new int[0];
+    private int goalCosts[] = new int[0];
+    private int goalStamps[] = new int[0];
+    private int query = 0;
+
+    // The map and target of the current query.
+    private GraphNode map[][];
+    private GraphNode target;
+    private int expansions = 0;
+    private int generated = 0;
+    private int peakOpenSize = 0;
+
+    public HierarchicalPlanner() {
+        this(0);
+    }
+
+    public HierarchicalPlanner(int clusterSize) {
+        this.fixedClusterSize = clusterSize;
+    }
+
+    @Override
+    public void setCellOpen(int x, int y, boolean open) {
+        if (abstracted != null && x < abstracted.length && y < abstracted[x].length) {
+            changedClusters.add(clusterOf(x, y));
+        }
+    }
+
+    @Override
+    public List<GraphNode> getPathToTarget(GraphNode map[][], GraphNode initial, GraphNode target) {
+        this.map = map;
+        this.target = target;
+        this.expansions = 0;
+        this.generated = 0;
+        this.peakOpenSize = 0;
+        if (map != abstracted) {
+            buildAbstraction();
+        } else if (!changedClusters.isEmpty()) {
+            updateAbstraction();
+        }
+        if (isGoal(initial.x, initial.y)) {
+            return new ArrayList<>();
+        }
+        startQuery();
+
+        // Link the start to the entrances of its cluster, and to the goal if it is in reach.
+        // The start cell itself is occupied by the unit, so the abstraction has no
+        // crossings through it; steps straight out of it into another cluster are
+        // linked the same way, one move further on.
+        final int start = nodes.size();
+        final int goal = start + 1;
+        Map<Integer, Integer> startCosts = new HashMap<>();
+        Map<Integer, GraphNode> startSteps = new HashMap<>();
+        int startCluster = clusterOf(initial.x, initial.y);
+        linkStart(startCluster, initial, 0, goal, startCosts, startSteps);
+        for (int i = initial.x - 1; i <= initial.x + 1; i++) {
+            for (int j = initial.y - 1; j <= initial.y + 1; j++) {
+                if (isOpen(i, j) && clusterOf(i, j) != startCluster) {
+                    linkStart(clusterOf(i, j), map[i][j], 1, goal, startCosts, startSteps);
+                }
+            }
+        }
+        List<int[]> startEdges = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> edge : startCosts.entrySet()) {
+            startEdges.add(new int[] { edge.getKey(), edge.getValue() });
+        }
+
+        // Link the entrances of every cluster touching the target's ring to the goal.
+        for (int cluster : getGoalClusters()) {
+            int distances[] = getClusterDistances(cluster, getGoalCells(cluster));
+            for (int node : clusterNodes.get(cluster)) {
+                int distance = distances[localIndex(cluster, nodes.get(node))];
+                if (distance >= 0) {
+                    goalStamps[node] = query;
+                    goalCosts[node] = distance;
+                }
+            }
+        }
+
+        // A* over the abstract graph. Entries are {f, g, node}; stale entries are skipped.
+        PriorityQueue<int[]> openSet = new PriorityQueue<>(16, new Comparator<int[]>() {
+            @Override
+            public int compare(int a[], int b[]) {
+                return a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(b[1], a[1]);
+            }
+        });
+        stamps[start] = query;
+        costs[start] = 0;
+        openSet.add(new int[] { 0, 0, start });
+        generated = 1;
+        peakOpenSize = 1;
+        while (!openSet.isEmpty()) {
+            int entry[] = openSet.poll();
+            int node = entry[2];
+            if (entry[1] > costs[node]) {
+                continue;
+            }
+            expansions++;
+            if (node == goal) {
+                return refinePath(initial, startSteps, start, goal);
+            }
+
+            for (int edge[] : node == start ? startEdges : edges.get(node)) {
+                relax(openSet, node, edge[0], edge[1], goal);
+            }
+            if (node != start && goalStamps[node] == query) {
+                relax(openSet, node, goal, goalCosts[node], goal);
+            }
+            peakOpenSize = Math.max(peakOpenSize, openSet.size());
+        }
+
+        UNREACHABLE.log("Target (%d, %d) is unreachable from position (%d, %d).",
+                target.x, target.y, initial.x, initial.y);
+        return null;
+    }
+
+    // Counts abstract nodes only, not the cells searched while linking and
+    // refining, as do the generated and open set counts.
+    @Override
+    public int getExpansions() {
+        return expansions;
+    }
+
+    @Override
+    public int getGenerated() {
+        return generated;
+    }
+
+    @Override
+    public int getPeakOpenSize() {
+        return peakOpenSize;
+    }
+
+    // Moves to the next query's stamp, growing the search arrays to hold every
+    // node and the start and goal.
+    private void startQuery() {
+        int size = nodes.size() + 2;
+        if (stamps.length < size) {
+            size = Math.max(size, stamps.length * 2);
+            costs = new int[size];
+            parents = new int[size];
+            stamps = new int[size];
+            goalCosts = new int[size];
+            goalStamps = new int[size];
+            query = 0;
+        }
+        query++;
+        if (query == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            Arrays.fill(goalStamps, 0);
+            query = 1;
+        }
+    }
+
+    // Queues a node if the route to it through the given node is the cheapest so far.
+    private void relax(PriorityQueue<int[]> openSet, int from, int to, int edgeCost, int goal) {
+        int cost = costs[from] + edgeCost;
+        if (stamps[to] != query || cost < costs[to]) {
+            stamps[to] = query;
+            costs[to] = cost;
+            parents[to] = from;
+            int heuristic = to == goal ? 0 : getHeuristicCost(nodes.get(to));
+            openSet.add(new int[] { cost + heuristic, cost, to });
+            generated++;
+        }
+    }
+
+    // Records the cost from the start to each entrance of a cluster, and to the
+    // goal, when searching the cluster from the given cell is the cheapest way
+    // found so far. A cell other than the start is remembered as the first step.
+    private void linkStart(int cluster, GraphNode from, int offset, int goal,
+            Map<Integer, Integer> startCosts, Map<Integer, GraphNode> startSteps) {
+        int distances[] = getClusterDistances(cluster, Arrays.asList(from));
+        for (int node : clusterNodes.get(cluster)) {
+            int distance = distances[localIndex(cluster, nodes.get(node))];
+            if (distance >= 0) {
+                setStartCost(node, offset + distance, offset > 0 ? from : null, startCosts, startSteps);
+            }
+        }
+        int distance = getGoalDistance(cluster, distances);
+        if (distance >= 0) {
+            setStartCost(goal, offset + distance, offset > 0 ? from : null, startCosts, startSteps);
+        }
+    }
+
+    private void setStartCost(int node, int cost, GraphNode step,
+            Map<Integer, Integer> startCosts, Map<Integer, GraphNode> startSteps) {
+        Integer known = startCosts.get(node);
+        if (known == null || cost < known) {
+            startCosts.put(node, cost);
+            startSteps.put(node, step);
+        }
+    }
+
+    // Turns the chain of abstract nodes into single-cell steps.
+    private List<GraphNode> refinePath(GraphNode initial, Map<Integer, GraphNode> startSteps, int start, int goal) {
+        List<Integer> chain = new ArrayList<>();
+        for (int node = goal; node != start; node = parents[node]) {
+            chain.add(0, node);
+        }
+
+        List<GraphNode> path = new ArrayList<>();
+        GraphNode current = initial;
+        GraphNode firstStep = startSteps.get(chain.get(0));
+        if (firstStep != null) {
+            path.add(firstStep);
+            current = firstStep;
+        }
+        for (int node : chain) {
+            if (node == goal) {
+                path.addAll(getClusterPath(clusterOf(current.x, current.y), current, null));
+                break;
+            }
+            GraphNode next = nodes.get(node);
+            if (clusterOf(current.x, current.y) == clusterOf(next.x, next.y)) {
+                path.addAll(getClusterPath(clusterOf(next.x, next.y), current, next));
+            } else {
+                path.add(map[next.x][next.y]);
+            }
+            current = next;
+        }
+        return path;
+    }
+
+    // Finds the entrances on every border between clusters and the distances
+    // between the entrances of each cluster.
+    private void buildAbstraction() {
+        abstracted = map;
+        changedClusters.clear();
+        clusterSize = fixedClusterSize;
+        if (clusterSize <= 0) {
+            int side = Math.max(map.length, map[0].length);
+            clusterSize = Math.max((side + CLUSTERS_ACROSS - 1) / CLUSTERS_ACROSS, MIN_CLUSTER_SIZE);
+        }
+        clustersX = (map.length + clusterSize - 1) / clusterSize;
+        clustersY = (map[0].length + clusterSize - 1) / clusterSize;
+        nodeIndex = new int[map.length][map[0].length];
+        for (int column[] : nodeIndex) {
+            Arrays.fill(column, -1);
+        }
+        nodes = new ArrayList<>();
+        edges = new ArrayList<>();
+        clusterNodes = new ArrayList<>();
+        freeNodes = new ArrayList<>();
+        crossings = new int[64];
+        borderCrossings = new ArrayList<>();
+        for (int i = 0; i < clustersX * clustersY; i++) {
+            clusterNodes.add(new ArrayList<Integer>());
+            for (int kind = 0; kind < BORDERS; kind++) {
+                borderCrossings.add(new ArrayList<int[]>());
+            }
+        }
+
+        for (int border = 0; border < borderCrossings.size(); border++) {
+            addCrossings(border);
+        }
+        for (int cluster = 0; cluster < clusterNodes.size(); cluster++) {
+            linkCluster(cluster);
+        }
+    }
+
+    // Brings the abstraction up to date with the clusters whose cells have
+    // changed: every border they touch is scanned again, and every cluster
+    // that changed or gained or lost an entrance is linked again.
+    private void updateAbstraction() {
+        Set<Integer> borders = new TreeSet<>();
+        for (int cluster : changedClusters) {
+            int cx = cluster / clustersY;
+            int cy = cluster % clustersY;
+            for (int ox = Math.max(cx - 1, 0); ox <= cx; ox++) {
+                for (int oy = Math.max(cy - 1, 0); oy <= cy; oy++) {
+                    int owner = (ox * clustersY + oy) * BORDERS;
+                    if (oy == cy) {
+                        borders.add(owner + EAST);
+                    }
+                    if (ox == cx) {
+                        borders.add(owner + SOUTH);
+                    }
+                    borders.add(owner + CORNER);
+                }
+            }
+        }
+
+        Set<Integer> relinked = new HashSet<>(changedClusters);
+        for (int border : borders) {
+            removeCrossings(border, relinked);
+        }
+        for (int border : borders) {
+            addCrossings(border);
+            for (int pair[] : borderCrossings.get(border)) {
+                relinked.add(clusterOf(nodes.get(pair[0])));
+                relinked.add(clusterOf(nodes.get(pair[1])));
+            }
+        }
+        for (int cluster : relinked) {
+            linkCluster(cluster);
+        }
+        changedClusters.clear();
+    }
+
+    // Scans one border for the crossings between the clusters on either side.
+    private void addCrossings(int border) {
+        int cluster = border / BORDERS;
+        int cx = cluster / clustersY;
+        int cy = cluster % clustersY;
+        int x0 = cx * clusterSize;
+        int y0 = cy * clusterSize;
+        int width = Math.min(clusterSize, map.length - x0);
+        int height = Math.min(clusterSize, map[0].length - y0);
+        List<int[]> crossed = borderCrossings.get(border);
+        switch (border % BORDERS) {
+        case EAST:
+            if (cx + 1 < clustersX) {
+                addEntrances(x0 + width - 1, y0, 1, 0, 0, 1, height, crossed);
+            }
+            break;
+        case SOUTH:
+            if (cy + 1 < clustersY) {
+                addEntrances(x0, y0 + height - 1, 0, 1, 1, 0, width, crossed);
+            }
+            break;
+        default:
+            if (cx + 1 < clustersX && cy + 1 < clustersY) {
+                addCornerEntrances(x0 + width, y0 + height, crossed);
+            }
+        }
+    }
+
+    // Takes out the crossings of one border, and the entrances left with none,
+    // adding the clusters on either side to those to link again.
+    private void removeCrossings(int border, Set<Integer> relinked) {
+        List<int[]> crossed = borderCrossings.get(border);
+        for (int pair[] : crossed) {
+            removeEdge(pair[0], pair[1]);
+            for (int node : pair) {
+                relinked.add(clusterOf(nodes.get(node)));
+                crossings[node]--;
+                if (crossings[node] == 0) {
+                    removeNode(node);
+                }
+            }
+        }
+        crossed.clear();
+    }
+
+    // Links every pair of entrances of a cluster by their distance inside it,
+    // in place of the links it had.
+    private void linkCluster(int cluster) {
+        List<Integer> members = clusterNodes.get(cluster);
+        for (int a : members) {
+            Iterator<int[]> links = edges.get(a).iterator();
+            while (links.hasNext()) {
+                if (clusterOf(nodes.get(links.next()[0])) == cluster) {
+                    links.remove();
+                }
+            }
+        }
+        for (int a : members) {
+            int distances[] = getClusterDistances(cluster, Arrays.asList(nodes.get(a)));
+            for (int b : members) {
+                int distance = distances[localIndex(cluster, nodes.get(b))];
+                if (b > a && distance >= 0) {
+                    addEdge(a, b, distance);
+                }
+            }
+        }
+    }
+
+    // Scans one cluster border of the given length. Cell i on the near side is
+    // (x + i * stepX, y + i * stepY) and its neighbour across the border is
+    // offset by (acrossX, acrossY).
+    private void addEntrances(int x, int y, int acrossX, int acrossY, int stepX, int stepY, int length,
+            List<int[]> crossed) {
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean crossable = i < length && isCrossable(x, y, acrossX, acrossY, stepX, stepY, i, i);
+            if (crossable && runStart < 0) {
+                runStart = i;
+            } else if (!crossable && runStart >= 0) {
+                int runEnd = i - 1;
+                if (runEnd - runStart + 1 < WIDE_ENTRANCE) {
+                    addTransition(x, y, acrossX, acrossY, stepX, stepY, (runStart + runEnd) / 2, (runStart + runEnd) / 2,
+                            crossed);
+                } else {
+                    addTransition(x, y, acrossX, acrossY, stepX, stepY, runStart, runStart, crossed);
+                    addTransition(x, y, acrossX, acrossY, stepX, stepY, runEnd, runEnd, crossed);
+                }
+                runStart = -1;
+            }
+        }
+
+        // Diagonal steps across the border that no straight crossing already covers.
+        for (int i = 0; i < length; i++) {
+            for (int j = i - 1; j <= i + 1; j += 2) {
+                if (j < 0 || j >= length || !isCrossable(x, y, acrossX, acrossY, stepX, stepY, i, j)) {
+                    continue;
+                }
+                if (!isCrossable(x, y, acrossX, acrossY, stepX, stepY, i, i)
+                        && !isCrossable(x, y, acrossX, acrossY, stepX, stepY, j, j)) {
+                    addTransition(x, y, acrossX, acrossY, stepX, stepY, i, j, crossed);
+                }
+            }
+        }
+    }
+
+    private boolean isCrossable(int x, int y, int acrossX, int acrossY, int stepX, int stepY, int near, int far) {
+        return isOpen(x + near * stepX, y + near * stepY)
+                && isOpen(x + far * stepX + acrossX, y + far * stepY + acrossY);
+    }
+
+    private void addTransition(int x, int y, int acrossX, int acrossY, int stepX, int stepY, int near, int far,
+            List<int[]> crossed) {
+        int a = addNode(x + near * stepX, y + near * stepY);
+        int b = addNode(x + far * stepX + acrossX, y + far * stepY + acrossY);
+        addCrossing(a, b, crossed);
+    }
+
+    // Diagonal steps through the point where four clusters meet, when neither
+    // cell beside the step is open to carry a straight crossing.
+    private void addCornerEntrances(int x, int y, List<int[]> crossed) {
+        if (isOpen(x - 1, y - 1) && isOpen(x, y) && !isOpen(x, y - 1) && !isOpen(x - 1, y)) {
+            addCrossing(addNode(x - 1, y - 1), addNode(x, y), crossed);
+        }
+        if (isOpen(x, y - 1) && isOpen(x - 1, y) && !isOpen(x - 1, y - 1) && !isOpen(x, y)) {
+            addCrossing(addNode(x, y - 1), addNode(x - 1, y), crossed);
+        }
+    }
+
+    private void addCrossing(int a, int b, List<int[]> crossed) {
+        addEdge(a, b, 1);
+        crossings[a]++;
+        crossings[b]++;
+        crossed.add(new int[] { a, b });
+    }
+
+    private int addNode(int x, int y) {
+        if (nodeIndex[x][y] < 0) {
+            int node;
+            if (freeNodes.isEmpty()) {
+                node = nodes.size();
+                nodes.add(null);
+                edges.add(new ArrayList<int[]>());
+            } else {
+                node = freeNodes.remove(freeNodes.size() - 1);
+            }
+            if (crossings.length <= node) {
+                crossings = Arrays.copyOf(crossings, crossings.length * 2);
+            }
+            nodes.set(node, new GraphNode(x, y));
+            crossings[node] = 0;
+            nodeIndex[x][y] = node;
+            clusterNodes.get(clusterOf(x, y)).add(node);
+        }
+        return nodeIndex[x][y];
+    }
+
+    private void removeNode(int node) {
+        GraphNode cell = nodes.get(node);
+        for (int edge[] : edges.get(node)) {
+            removeLink(edge[0], node);
+        }
+        edges.get(node).clear();
+        clusterNodes.get(clusterOf(cell)).remove(Integer.valueOf(node));
+        nodeIndex[cell.x][cell.y] = -1;
+        nodes.set(node, null);
+        freeNodes.add(node);
+    }
+
+    private void addEdge(int a, int b, int cost) {
+        edges.get(a).add(new int[] { b, cost });
+        edges.get(b).add(new int[] { a, cost });
+    }
+
+    private void removeEdge(int a, int b) {
+        removeLink(a, b);
+        removeLink(b, a);
+    }
+
+    // Removes one of the edges from a to b.
+    private void removeLink(int a, int b) {
+        Iterator<int[]> links = edges.get(a).iterator();
+        while (links.hasNext()) {
+            if (links.next()[0] == b) {
+                links.remove();
+                return;
+            }
+        }
+    }
+
+    // Breadth-first distances from the sources to every cell of the cluster,
+    // moving only through open cells inside it. Unreached cells are -1.
+    private int[] getClusterDistances(int cluster, List<GraphNode> sources) {
+        return searchCluster(cluster, sources, null)[0];
+    }
+
+    // The cells of a shortest in-cluster path from one cell to another, or to
+    // the nearest cell next to the target when to is null.
+    private List<GraphNode> getClusterPath(int cluster, GraphNode from, GraphNode to) {
+        int result[][] = searchCluster(cluster, Arrays.asList(from), to == null ? new GraphNode(-1, -1) : to);
+        int parents[] = result[1];
+        int end = result[2][0];
+        List<GraphNode> path = new ArrayList<>();
+        int x0 = (cluster / clustersY) * clusterSize;
+        int y0 = (cluster % clustersY) * clusterSize;
+        int height = Math.min(clusterSize, map[0].length - y0);
+        for (int cell = end; parents[cell] >= 0; cell = parents[cell]) {
+            path.add(0, map[x0 + cell / height][y0 + cell % height]);
+        }
+        return path;
+    }
+
+    // Breadth-first search inside one cluster. Returns the distances, the parent
+    // of each reached cell, and the first cell matching stop; a stop of (-1, -1)
+    // matches any goal cell and a null stop searches the whole cluster.
+    private int[][] searchCluster(int cluster, List<GraphNode> sources, GraphNode stop) {
+        int x0 = (cluster / clustersY) * clusterSize;
+        int y0 = (cluster % clustersY) * clusterSize;
+        int width = Math.min(clusterSize, map.length - x0);
+        int height = Math.min(clusterSize, map[0].length - y0);
+        int distances[] = new int[width * height];
+        int parents[] = new int[width * height];
+        int queue[] = new int[width * height];
+        Arrays.fill(distances, -1);
+        int head = 0;
+        int tail = 0;
+        for (GraphNode source : sources) {
+            int cell = (source.x - x0) * height + (source.y - y0);
+            if (distances[cell] < 0) {
+                distances[cell] = 0;
+                parents[cell] = -1;
+                queue[tail++] = cell;
+            }
+        }
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int x = x0 + cell / height;
+            int y = y0 + cell % height;
+            if (stop != null && (stop.x < 0 ? isGoal(x, y) : stop.x == x && stop.y == y)) {
+                return new int[][] { distances, parents, { cell } };
+            }
+            for (int i = Math.max(x - 1, x0); i <= Math.min(x + 1, x0 + width - 1); i++) {
+                for (int j = Math.max(y - 1, y0); j <= Math.min(y + 1, y0 + height - 1); j++) {
+                    int next = (i - x0) * height + (j - y0);
+                    if (isOpen(i, j) && distances[next] < 0) {
+                        distances[next] = distances[cell] + 1;
+                        parents[next] = cell;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+        return new int[][] { distances, parents, { -1 } };
+    }
+
+    // The distance to the nearest goal cell in the cluster, or -1 if none was reached.
+    private int getGoalDistance(int cluster, int distances[]) {
+        int best = -1;
+        for (GraphNode cell : getGoalCells(cluster)) {
+            int distance = distances[localIndex(cluster, cell)];
+            if (distance >= 0 && (best < 0 || distance < best)) {
+                best = distance;
+            }
+        }
+        return best;
+    }
+
+    // The clusters holding at least one open cell next to the target.
+    private List<Integer> getGoalClusters() {
+        List<Integer> clusters = new ArrayList<>();
+        for (int i = target.x - 1; i <= target.x + 1; i++) {
+            for (int j = target.y - 1; j <= target.y + 1; j++) {
+                if (isOpen(i, j) && !clusters.contains(clusterOf(i, j))) {
+                    clusters.add(clusterOf(i, j));
+                }
+            }
+        }
+        return clusters;
+    }
+
+    private List<GraphNode> getGoalCells(int cluster) {
+        List<GraphNode> cells = new ArrayList<>();
+        for (int i = target.x - 1; i <= target.x + 1; i++) {
+            for (int j = target.y - 1; j <= target.y + 1; j++) {
+                if (isOpen(i, j) && clusterOf(i, j) == cluster) {
+                    cells.add(map[i][j]);
+                }
+            }
+        }
+        return cells;
+    }
+
+    // Chebyshev distance to the ring of cells around the target.
+    private int getHeuristicCost(GraphNode node) {
+        return Math.max(node.distance(target) - 1, 0);
+    }
+
+    private int clusterOf(int x, int y) {
+        return (x / clusterSize) * clustersY + y / clusterSize;
+    }
+
+    private int clusterOf(GraphNode cell) {
+        return clusterOf(cell.x, cell.y);
+    }
+
+    private int localIndex(int cluster, GraphNode cell) {
+        int x0 = (cluster / clustersY) * clusterSize;
+        int y0 = (cluster % clustersY) * clusterSize;
+        int height = Math.min(clusterSize, map[0].length - y0);
+        return (cell.x - x0) * height + (cell.y - y0);
+    }
+
+    private boolean isOpen(int x, int y) {
+        return x >= 0 && x < map.length && y >= 0 && y < map[x].length && map[x][y] != null;
+    }
+
+    private boolean isGoal(int x, int y) {
+        return Math.abs(x - target.x) <= 1 && Math.abs(y - target.y) <= 1;
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+// Jump Point Search over the 8-connected, uniform-cost grid. Instead of queuing
+// every neighbour, each expansion runs in straight and diagonal lines until it
+// hits a cell with a forced neighbour or a goal cell, so only those jump points
+// enter the open set. Diagonal moves may cut corners, as in getAdjacentNodes.
+public class JumpPointSearch implements PathPlanner {
+    private static final AgentLog.Site UNREACHABLE = new AgentLog.Site("JumpPointSearch", Level.INFO, 10);
+    private GraphNode map[][];
+    private GraphNode target;
+    private OpenSet frontier = null;
+    private ClosedSet explored = null;
+    private int expansions = 0;
+    private int generated = 0;
+    private int peakOpenSize = 0;
+
+    @Override
+    public List<GraphNode> getPathToTarget(GraphNode map[][], GraphNode initial, GraphNode target) {
+        this.map = map;
+        this.target = target;
+        this.expansions = 0;
+
+        OpenSet openSet = frontier;
+        if (openSet == null || !openSet.fits(map.length, map[0].length)) {
+            openSet = frontier = new OpenSet(map.length, map[0].length);
+        } else {
+            openSet.clear();
+        }
+        if (explored == null || !explored.fits(map.length, map[0].length)) {
+            explored = new ClosedSet(map.length, map[0].length);
+        } else {
+            explored.clear();
+        }
+        openSet.add(new WeightedNode(initial, null, target));
+        generated = 1;
+        peakOpenSize = 1;
+
+        while (!openSet.isEmpty()) {
+            WeightedNode current = openSet.poll();
+            GraphNode node = current.getNode();
+            if (isGoal(node.x, node.y)) {
+                return collectPath(current);
+            }
+            explored.add(node);
+            expansions++;
+
+            for (int direction[] : getSuccessorDirections(current)) {
+                GraphNode jumpPoint = jump(node.x, node.y, direction[0], direction[1]);
+                if (jumpPoint == null || explored.contains(jumpPoint)) {
+                    continue;
+                }
+                WeightedNode queued = openSet.get(jumpPoint);
+                if (queued == null) {
+                    openSet.add(new WeightedNode(jumpPoint, current, target));
+                    generated++;
+                } else {
+                    openSet.decreaseKey(queued, current);
+                }
+            }
+            peakOpenSize = Math.max(peakOpenSize, openSet.size());
+        }
+
+        UNREACHABLE.log("Target (%d, %d) is unreachable from position (%d, %d).",
+                target.x, target.y, initial.x, initial.y);
+        return null;
+    }
+
+    @Override
+    public int getExpansions() {
+        return expansions;
+    }
+
+    @Override
+    public int getGenerated() {
+        return generated;
+    }
+
+    @Override
+    public int getPeakOpenSize() {
+        return peakOpenSize;
+    }
+
+    // Returns the directions worth searching from a node: all eight from the
+    // start, otherwise the natural and forced neighbours of the arrival direction.
+    private List<int[]> getSuccessorDirections(WeightedNode current) {
+        List<int[]> directions = new ArrayList<>();
+        GraphNode node = current.getNode();
+        if (current.getParent() == null) {
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    if (dx != 0 || dy != 0) {
+                        directions.add(new int[] { dx, dy });
+                    }
+                }
+            }
+            return directions;
+        }
+
+        GraphNode parent = current.getParent().getNode();
+        int x = node.x;
+        int y = node.y;
+        int dx = Integer.signum(x - parent.x);
+        int dy = Integer.signum(y - parent.y);
+        if (dx != 0 && dy != 0) {
+            directions.add(new int[] { dx, 0 });
+            directions.add(new int[] { 0, dy });
+            directions.add(new int[] { dx, dy });
+            if (!isOpen(x - dx, y)) {
+                directions.add(new int[] { -dx, dy });
+            }
+            if (!isOpen(x, y - dy)) {
+                directions.add(new int[] { dx, -dy });
+            }
+        } else if (dx != 0) {
+            directions.add(new int[] { dx, 0 });
+            if (!isOpen(x, y + 1)) {
+                directions.add(new int[] { dx, 1 });
+            }
+            if (!isOpen(x, y - 1)) {
+                directions.add(new int[] { dx, -1 });
+            }
+        } else {
+            directions.add(new int[] { 0, dy });
+            if (!isOpen(x + 1, y)) {
+                directions.add(new int[] { 1, dy });
+            }
+            if (!isOpen(x - 1, y)) {
+                directions.add(new int[] { -1, dy });
+            }
+        }
+        return directions;
+    }
+
+    // Moves from (x, y) in the given direction until reaching a jump point,
+    // returning null if the line runs into an occupied cell first.
+    private GraphNode jump(int x, int y, int dx, int dy) {
+        while (true) {
+            x += dx;
+            y += dy;
+            if (!isOpen(x, y)) {
+                return null;
+            }
+            if (isGoal(x, y)) {
+                return map[x][y];
+            }
+            if (dx != 0 && dy != 0) {
+                if ((!isOpen(x - dx, y) && isOpen(x - dx, y + dy))
+                        || (!isOpen(x, y - dy) && isOpen(x + dx, y - dy))) {
+                    return map[x][y];
+                }
+                // A diagonal step is a jump point if either straight line from it finds one.
+                if (jump(x, y, dx, 0) != null || jump(x, y, 0, dy) != null) {
+                    return map[x][y];
+                }
+            } else if (dx != 0) {
+                if ((!isOpen(x, y + 1) && isOpen(x + dx, y + 1))
+                        || (!isOpen(x, y - 1) && isOpen(x + dx, y - 1))) {
+                    return map[x][y];
+                }
+            } else {
+                if ((!isOpen(x + 1, y) && isOpen(x + 1, y + dy))
+                        || (!isOpen(x - 1, y) && isOpen(x - 1, y + dy))) {
+                    return map[x][y];
+                }
+            }
+        }
+    }
+
+    private boolean isOpen(int x, int y) {
+        return x >= 0 && x < map.length && y >= 0 && y < map[x].length && map[x][y] != null;
+    }
+
+    // The same goal test as AStarSearch.targetAdjacent.
+    private boolean isGoal(int x, int y) {
+        return Math.abs(x - target.x) <= 1 && Math.abs(y - target.y) <= 1;
+    }
+
+    // Walks back through the jump points, filling in the cells between each pair.
+    private List<GraphNode> collectPath(WeightedNode current) {
+        List<GraphNode> path = new ArrayList<>();
+        while (current.getParent() != null) {
+            GraphNode to = current.getNode();
+            GraphNode from = current.getParent().getNode();
+            int dx = Integer.signum(to.x - from.x);
+            int dy = Integer.signum(to.y - from.y);
+            for (int step = to.distance(from); step > 0; step--) {
+                path.add(0, map[from.x + dx * step][from.y + dy * step]);
+            }
+            current = current.getParent();
+        }
+        return path;
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The ALT (A*, landmarks, triangle inequality) heuristic. A few landmark cells
+// are picked far apart on the map, and a breadth-first search from each gives
+// the exact distance from it to every cell. For any landmark L, the distance
+// from x to y is at least |d(L, y) - d(L, x)|, which follows walls and dead
+// ends where the Chebyshev distance cannot. The tables are built once for a
+// map and kept until it is told that a cell of that map has changed.
+public class LandmarkHeuristic implements MapListener {
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+
+    // Areas with fewer open cells than this get no landmark of their own.
+    private static final int MIN_AREA = 16;
+
+    private final int count;
+
+    // The tables and the map they were built for, kept until a cell of it
+    // changes. Distances are indexed by landmark * cells + x * height + y.
+    private GraphNode measured[][] = null;
+    private boolean stale = false;
+    private int height;
+    private int cells;
+    private int landmarks[];
+    private int distances[];
+
+    // The target of the current query, and the landmark distances of each open
+    // cell around it, indexed by ring cell * landmarks + landmark. The array is
+    // sized with the tables.
+    private GraphNode target;
+    private int ringSize;
+    private int ringDistances[];
+
+    public LandmarkHeuristic(int count) {
+        this.count = count;
+    }
+
+    // Sets the target for the queries to come, first rebuilding the tables if
+    // the map is not the one they were built for or a cell of it has changed.
+    public void prepare(GraphNode map[][], GraphNode target) {
+        if (map != measured || stale) {
+            build(map);
+        }
+        this.target = target;
+        ringSize = 0;
+        for (int i = Math.max(target.x - 1, 0); i <= Math.min(target.x + 1, map.length - 1); i++) {
+            for (int j = Math.max(target.y - 1, 0); j <= Math.min(target.y + 1, height - 1); j++) {
+                if (map[i][j] == null) {
+                    continue;
+                }
+                for (int landmark = 0; landmark < landmarks.length; landmark++) {
+                    ringDistances[ringSize * landmarks.length + landmark] = distances[landmark * cells + i * height + j];
+                }
+                ringSize++;
+            }
+        }
+    }
+
+    // The estimated cost from a node to the target, on the same scale as
+    // GraphNode.distance: the Chebyshev distance, or one more than the landmark
+    // bound on the steps to the nearest ring cell when that is larger. The ring
+    // cells are bounded one by one, since a target on a wall can have ring
+    // cells on both sides of it that are far apart.
+    public int getCost(GraphNode node) {
+        int cell = node.x * height + node.y;
+        int nearest = UNREACHABLE;
+        for (int ring = 0; ring < ringSize; ring++) {
+            int bound = 0;
+            for (int landmark = 0; landmark < landmarks.length; landmark++) {
+                int distance = distances[landmark * cells + cell];
+                int ringDistance = ringDistances[ring * landmarks.length + landmark];
+                if (distance >= UNREACHABLE) {
+                    continue;
+                }
+                if (ringDistance >= UNREACHABLE) {
+                    // The ring cell lies in another area, so it cannot be reached from here.
+                    bound = UNREACHABLE;
+                    break;
+                }
+                bound = Math.max(bound, Math.abs(ringDistance - distance));
+            }
+            nearest = Math.min(nearest, bound);
+        }
+        int cost = node.distance(target);
+        if (nearest < UNREACHABLE) {
+            cost = Math.max(cost, nearest + 1);
+        }
+        return cost;
+    }
+
+    public int getLandmarkCount() {
+        return landmarks == null ? 0 : landmarks.length;
+    }
+
+    // Any change can shorten or lengthen the distances from every landmark,
+    // so the tables are rebuilt before the next query.
+    @Override
+    public void setCellOpen(int x, int y, boolean open) {
+        stale = true;
+    }
+
+    // Picks each landmark as the open cell furthest from those already picked,
+    // and measures the distances from it. Walls can split the map into areas
+    // with no way between them, where a landmark in one area says nothing
+    // about another, so first every area of a useful size gets a landmark of
+    // its own, largest first, at the cell furthest from where the area starts.
+    private void build(GraphNode map[][]) {
+        height = map[0].length;
+        cells = map.length * height;
+        measured = map;
+        stale = false;
+
+        // Label the areas; sizes[area] is its cell count and firsts[area] its first cell.
+        int areas[] = new int[cells];
+        List<Integer> sizes = new ArrayList<Integer>();
+        List<Integer> firsts = new ArrayList<Integer>();
+        int queue[] = new int[cells];
+        Arrays.fill(areas, -1);
+        for (int source = 0; source < cells; source++) {
+            if (areas[source] >= 0 || map[source / height][source % height] == null) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            areas[source] = sizes.size();
+            queue[tail++] = source;
+            while (head < tail) {
+                int cell = queue[head++];
+                int x = cell / height;
+                int y = cell % height;
+                for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, map.length - 1); i++) {
+                    for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                        int next = i * height + j;
+                        if (map[i][j] != null && areas[next] < 0) {
+                            areas[next] = sizes.size();
+                            queue[tail++] = next;
+                        }
+                    }
+                }
+            }
+            sizes.add(tail);
+            firsts.add(source);
+        }
+
+        int picked[] = new int[count];
+        int tables[] = new int[count * cells];
+        boolean covered[] = new boolean[sizes.size()];
+        int scratch[] = new int[cells];
+        // How far each cell is from the nearest landmark so far.
+        int nearest[] = new int[cells];
+        Arrays.fill(nearest, UNREACHABLE);
+        int found = 0;
+        while (found < count) {
+            int area = -1;
+            for (int i = 0; i < sizes.size(); i++) {
+                if (!covered[i] && sizes.get(i) >= MIN_AREA && (area < 0 || sizes.get(i) > sizes.get(area))) {
+                    area = i;
+                }
+            }
+            int furthest = -1;
+            if (area >= 0) {
+                covered[area] = true;
+                measure(map, firsts.get(area), scratch, 0);
+                furthest = getFurthest(scratch);
+            } else {
+                furthest = getFurthest(nearest);
+                if (furthest < 0 || nearest[furthest] == 0) {
+                    break;
+                }
+            }
+            picked[found] = furthest;
+            measure(map, furthest, tables, found * cells);
+            for (int cell = 0; cell < cells; cell++) {
+                nearest[cell] = Math.min(nearest[cell], tables[found * cells + cell]);
+            }
+            found++;
+        }
+        landmarks = Arrays.copyOf(picked, found);
+        distances = Arrays.copyOf(tables, found * cells);
+        ringDistances = new int[9 * found];
+    }
+
+    // The reachable cell with the largest distance in the table, or -1.
+    private int getFurthest(int table[]) {
+        int furthest = -1;
+        for (int cell = 0; cell < cells; cell++) {
+            if (table[cell] < UNREACHABLE && (furthest < 0 || table[cell] > table[furthest])) {
+                furthest = cell;
+            }
+        }
+        return furthest;
+    }
+
+    // Breadth-first distances from one cell over the open cells, written into
+    // the table from the given offset.
+    private void measure(GraphNode map[][], int source, int table[], int offset) {
+        Arrays.fill(table, offset, offset + cells, UNREACHABLE);
+        int queue[] = new int[cells];
+        int head = 0;
+        int tail = 0;
+        table[offset + source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int cell = queue[head++];
+            int x = cell / height;
+            int y = cell % height;
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, map.length - 1); i++) {
+                for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                    int next = i * height + j;
+                    if (map[i][j] != null && table[offset + next] == UNREACHABLE) {
+                        table[offset + next] = table[offset + cell] + 1;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+    }
+}
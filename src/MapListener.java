@@ -0,0 +1,8 @@
+// A planner that keeps what it has worked out about a map between queries.
+// Rather than compare the whole map against a copy on every query, it is told
+// each cell that changed between open and occupied in the map it last
+// searched, before the next query on that map.
+public interface MapListener {
+
+    void setCellOpen(int x, int y, boolean open);
+}
@@ -0,0 +1,98 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+// The parts of a SEPIA map file that matter for pathfinding: the grid size,
+// where each unit stands and what it is, and where the resource nodes are.
+// Lets the searches be run on the real mazes without starting a game.
+public class MazeLayout {
+    int xExtent;
+    int yExtent;
+    List<GraphNode> unitCells = new ArrayList<GraphNode>();
+    List<String> unitTypes = new ArrayList<String>();
+    List<GraphNode> resourceCells = new ArrayList<GraphNode>();
+
+    public MazeLayout(int xExtent, int yExtent) {
+        this.xExtent = xExtent;
+        this.yExtent = yExtent;
+    }
+
+    // Reads a map saved by SEPIA, such as maze_16x16.xml.
+    public static MazeLayout load(File file) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        Element state = document.getDocumentElement();
+        MazeLayout layout = new MazeLayout(Integer.parseInt(state.getAttribute("xExtent")),
+                Integer.parseInt(state.getAttribute("yExtent")));
+
+        NodeList players = state.getElementsByTagName("player");
+        for (int i = 0; i < players.getLength(); i++) {
+            Element player = (Element) players.item(i);
+            Map<String, String> templateNames = new HashMap<String, String>();
+            NodeList templates = player.getElementsByTagName("template");
+            for (int j = 0; j < templates.getLength(); j++) {
+                Element template = (Element) templates.item(j);
+                templateNames.put(getText(template, "ID"), getText(template, "name"));
+            }
+            NodeList units = player.getElementsByTagName("unit");
+            for (int j = 0; j < units.getLength(); j++) {
+                Element unit = (Element) units.item(j);
+                layout.unitCells.add(getPosition(unit));
+                layout.unitTypes.add(templateNames.get(getText(unit, "templateID")));
+            }
+        }
+
+        NodeList resources = state.getElementsByTagName("resourceNode");
+        for (int i = 0; i < resources.getLength(); i++) {
+            layout.resourceCells.add(getPosition((Element) resources.item(i)));
+        }
+        return layout;
+    }
+
+    // The map in the form the planners take: a GraphNode for every open cell,
+    // null wherever a unit or resource stands.
+    public GraphNode[][] toMap() {
+        GraphNode map[][] = new GraphNode[xExtent][yExtent];
+        for (int i = 0; i < xExtent; i++) {
+            for (int j = 0; j < yExtent; j++) {
+                map[i][j] = new GraphNode(i, j);
+            }
+        }
+        for (GraphNode cell : unitCells) {
+            map[cell.x][cell.y] = null;
+        }
+        for (GraphNode cell : resourceCells) {
+            map[cell.x][cell.y] = null;
+        }
+        return map;
+    }
+
+    // The cell of the first unit of the given type, or null if there is none.
+    public GraphNode findUnit(String type) {
+        int index = unitTypes.indexOf(type);
+        return index < 0 ? null : unitCells.get(index);
+    }
+
+    private static GraphNode getPosition(Element element) {
+        return new GraphNode(Integer.parseInt(getText(element, "xPosition")),
+                Integer.parseInt(getText(element, "yPosition")));
+    }
+
+    // The text of the first direct child with the given tag.
+    private static String getText(Element element, String tag) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && ((Element) child).getTagName().equals(tag)) {
+                return child.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Many mazes compiled into one binary file. The SEPIA map files repeat dozens
+// of unit templates in every maze, though the searches only need each unit's
+// type name; a pack keeps one table of type names for all its mazes. Each maze
+// then holds its size, its units as a cell and an index into that table, its
+// resource cells, and an occupancy bitmap with one bit per cell. The file is
+// memory-mapped and read in place, so opening a pack decodes only the type
+// names and the directory, and a maze costs nothing until it is asked for.
+//
+// Layout, big-endian:
+//   int magic, int type count, per type: short length, UTF-8 name,
+//   int maze count, per maze: short length, UTF-8 name, int offset of its body.
+//   Body: short xExtent, short yExtent,
+//         short unit count, per unit: short x, short y, short type,
+//         short resource count, per resource: short x, short y,
+//         the bitmap, bit x * yExtent + y set where the cell is occupied.
+//
+// Run it as a program to compile SEPIA map files into a pack:
+//   java -cp "Sepia.jar;." MazePack mazes.mazepack maze_8x8.xml maze_16x16.xml
+public class MazePack {
+    private static final int MAGIC = 0x4d5a5031;
+
+    private final ByteBuffer buffer;
+    private final String types[];
+    private final String names[];
+    private final int offsets[];
+
+    private MazePack(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a maze pack");
+        }
+        int position = 4;
+        types = new String[buffer.getInt(position)];
+        position += 4;
+        for (int i = 0; i < types.length; i++) {
+            types[i] = getString(position);
+            position += 2 + buffer.getShort(position);
+        }
+        names = new String[buffer.getInt(position)];
+        offsets = new int[names.length];
+        position += 4;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = getString(position);
+            position += 2 + buffer.getShort(position);
+            offsets[i] = buffer.getInt(position);
+            position += 4;
+        }
+    }
+
+    // Maps a pack file into memory. The mapping stays valid after the file is closed.
+    public static MazePack open(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MazePack(buffer);
+        }
+    }
+
+    // Writes the mazes, under the given names, as a pack.
+    public static void write(File file, List<String> names, List<MazeLayout> layouts) throws IOException {
+        List<String> types = new ArrayList<String>();
+        for (MazeLayout layout : layouts) {
+            for (String type : layout.unitTypes) {
+                if (!types.contains(type)) {
+                    types.add(type);
+                }
+            }
+        }
+
+        // The directory's size fixes where the first body starts.
+        int offset = 12;
+        for (String type : types) {
+            offset += 2 + type.getBytes(StandardCharsets.UTF_8).length;
+        }
+        for (String name : names) {
+            offset += 6 + name.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(types.size());
+            for (String type : types) {
+                writeString(out, type);
+            }
+            out.writeInt(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                writeString(out, names.get(i));
+                out.writeInt(offset);
+                offset += getBodySize(layouts.get(i));
+            }
+            for (MazeLayout layout : layouts) {
+                writeBody(out, layout, types);
+            }
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public List<String> getNames() {
+        return Arrays.asList(names);
+    }
+
+    // The maze with the given name, or null if the pack has none.
+    public Maze get(String name) {
+        int index = Arrays.asList(names).indexOf(name);
+        return index < 0 ? null : get(index);
+    }
+
+    public Maze get(int index) {
+        return new Maze(names[index], offsets[index]);
+    }
+
+    // One maze of the pack, read straight from the mapped file.
+    public class Maze {
+        private final String name;
+        private final int xExtent;
+        private final int yExtent;
+        private final int units;
+        private final int resources;
+        private final int unitsAt;
+        private final int resourcesAt;
+        private final int bitmapAt;
+
+        private Maze(String name, int offset) {
+            this.name = name;
+            xExtent = buffer.getShort(offset);
+            yExtent = buffer.getShort(offset + 2);
+            units = buffer.getShort(offset + 4);
+            unitsAt = offset + 6;
+            resources = buffer.getShort(unitsAt + 6 * units);
+            resourcesAt = unitsAt + 6 * units + 2;
+            bitmapAt = resourcesAt + 4 * resources;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getXExtent() {
+            return xExtent;
+        }
+
+        public int getYExtent() {
+            return yExtent;
+        }
+
+        // False where a unit or resource stands.
+        public boolean isOpen(int x, int y) {
+            int bit = x * yExtent + y;
+            return (buffer.get(bitmapAt + bit / 8) & (1 << (bit % 8))) == 0;
+        }
+
+        public int getUnitCount() {
+            return units;
+        }
+
+        public int getUnitX(int unit) {
+            return buffer.getShort(unitsAt + 6 * unit);
+        }
+
+        public int getUnitY(int unit) {
+            return buffer.getShort(unitsAt + 6 * unit + 2);
+        }
+
+        public String getUnitType(int unit) {
+            return types[buffer.getShort(unitsAt + 6 * unit + 4)];
+        }
+
+        public int getResourceCount() {
+            return resources;
+        }
+
+        public int getResourceX(int resource) {
+            return buffer.getShort(resourcesAt + 4 * resource);
+        }
+
+        public int getResourceY(int resource) {
+            return buffer.getShort(resourcesAt + 4 * resource + 2);
+        }
+
+        // The cell of the first unit of the given type, or null if there is none.
+        public GraphNode findUnit(String type) {
+            for (int unit = 0; unit < units; unit++) {
+                if (getUnitType(unit).equals(type)) {
+                    return new GraphNode(getUnitX(unit), getUnitY(unit));
+                }
+            }
+            return null;
+        }
+
+        // The map in the form the planners take, filled in from the bitmap.
+        public GraphNode[][] toMap() {
+            GraphNode map[][] = new GraphNode[xExtent][yExtent];
+            for (int i = 0; i < xExtent; i++) {
+                for (int j = 0; j < yExtent; j++) {
+                    if (isOpen(i, j)) {
+                        map[i][j] = new GraphNode(i, j);
+                    }
+                }
+            }
+            return map;
+        }
+
+        public MazeLayout toLayout() {
+            MazeLayout layout = new MazeLayout(xExtent, yExtent);
+            for (int unit = 0; unit < units; unit++) {
+                layout.unitCells.add(new GraphNode(getUnitX(unit), getUnitY(unit)));
+                layout.unitTypes.add(getUnitType(unit));
+            }
+            for (int resource = 0; resource < resources; resource++) {
+                layout.resourceCells.add(new GraphNode(getResourceX(resource), getResourceY(resource)));
+            }
+            return layout;
+        }
+    }
+
+    private String getString(int position) {
+        byte bytes[] = new byte[buffer.getShort(position)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte bytes[] = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int getBodySize(MazeLayout layout) {
+        return 8 + 6 * layout.unitCells.size() + 4 * layout.resourceCells.size()
+                + (layout.xExtent * layout.yExtent + 7) / 8;
+    }
+
+    private static void writeBody(DataOutputStream out, MazeLayout layout, List<String> types) throws IOException {
+        out.writeShort(layout.xExtent);
+        out.writeShort(layout.yExtent);
+        out.writeShort(layout.unitCells.size());
+        for (int i = 0; i < layout.unitCells.size(); i++) {
+            out.writeShort(layout.unitCells.get(i).x);
+            out.writeShort(layout.unitCells.get(i).y);
+            out.writeShort(types.indexOf(layout.unitTypes.get(i)));
+        }
+        out.writeShort(layout.resourceCells.size());
+        for (GraphNode cell : layout.resourceCells) {
+            out.writeShort(cell.x);
+            out.writeShort(cell.y);
+        }
+
+        byte bitmap[] = new byte[(layout.xExtent * layout.yExtent + 7) / 8];
+        List<GraphNode> occupied = new ArrayList<GraphNode>(layout.unitCells);
+        occupied.addAll(layout.resourceCells);
+        for (GraphNode cell : occupied) {
+            int bit = cell.x * layout.yExtent + cell.y;
+            bitmap[bit / 8] |= 1 << (bit % 8);
+        }
+        out.write(bitmap);
+    }
+
+    // Compiles the SEPIA map files named after the pack file into it, each
+    // under its file name.
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: MazePack <pack file> <map file>...");
+            return;
+        }
+        List<String> names = new ArrayList<String>();
+        List<MazeLayout> layouts = new ArrayList<MazeLayout>();
+        long xmlBytes = 0;
+        for (int i = 1; i < args.length; i++) {
+            File file = new File(args[i]);
+            names.add(file.getName());
+            layouts.add(MazeLayout.load(file));
+            xmlBytes += file.length();
+        }
+        File pack = new File(args[0]);
+        write(pack, names, layouts);
+        System.out.printf("Wrote %d mazes to %s: %d bytes, from %d bytes of XML.\n",
+                names.size(), pack, pack.length(), xmlBytes);
+    }
+}
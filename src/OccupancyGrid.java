@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.cwru.sepia.environment.model.history.BirthLog;
+import edu.cwru.sepia.environment.model.history.DeathLog;
+import edu.cwru.sepia.environment.model.history.History;
+import edu.cwru.sepia.environment.model.history.ResourceNodeExhaustionLog;
+import edu.cwru.sepia.environment.model.state.ResourceNode.ResourceView;
+import edu.cwru.sepia.environment.model.state.State.StateView;
+import edu.cwru.sepia.environment.model.state.Unit.UnitView;
+
+// The map the planners search, kept for the whole episode. It holds a
+// GraphNode for every open cell and null for every cell taken by a unit or a
+// resource, is built once from the initial state, and is then patched each
+// turn from unit positions and the birth, death and exhaustion logs. The units
+// being planned for are left out, so their own moves never change the map.
+// It also keeps track of which open cells connect, so a search need not run
+// at all when its target cannot be reached.
+public class OccupancyGrid {
+    private GraphNode nodes[][];
+    private int occupants[][];
+    private Map<Integer, GraphNode> unitCells = new HashMap<Integer, GraphNode>();
+    private Map<Integer, GraphNode> resourceCells = new HashMap<Integer, GraphNode>();
+    private Set<Integer> ignoredUnits;
+    private ConnectedAreas areas;
+    private int version = 0;
+    private int lastTurnRead;
+
+    public OccupancyGrid(StateView state, Collection<Integer> ignoredUnits) {
+        this.ignoredUnits = new HashSet<Integer>(ignoredUnits);
+        this.nodes = new GraphNode[state.getXExtent()][state.getYExtent()];
+        this.occupants = new int[state.getXExtent()][state.getYExtent()];
+        for (int id : state.getAllUnitIds()) {
+            addUnit(state, id, null);
+        }
+        for (int id : state.getAllResourceIds()) {
+            ResourceView resource = state.getResourceNode(id);
+            GraphNode cell = new GraphNode(resource.getXPosition(), resource.getYPosition());
+            resourceCells.put(id, cell);
+            occupants[cell.x][cell.y]++;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            for (int j = 0; j < nodes[i].length; j++) {
+                if (occupants[i][j] == 0) {
+                    nodes[i][j] = new GraphNode(i, j);
+                }
+            }
+        }
+        this.areas = new ConnectedAreas(nodes);
+        this.lastTurnRead = state.getTurnNumber();
+    }
+
+    // The shared map. Planners must treat it as read-only.
+    public GraphNode[][] getMap() {
+        return nodes;
+    }
+
+    // Whether a unit at one cell can reach a cell next to the target, in O(1)
+    // unless cells have closed in a way that may have split an area.
+    public boolean isReachable(GraphNode from, GraphNode target) {
+        return areas.isReachable(from, target);
+    }
+
+    // Moves forward every time a cell changes between open and occupied.
+    public int getVersion() {
+        return version;
+    }
+
+    // Applies everything that happened since the last update and returns the
+    // cells that changed between open and occupied.
+    public List<GraphNode> update(StateView state, History.HistoryView statehistory) {
+        Map<GraphNode, Boolean> touched = new HashMap<GraphNode, Boolean>();
+        for (int turn = lastTurnRead; turn < state.getTurnNumber(); turn++) {
+            for (BirthLog birth : statehistory.getBirthLogs(turn)) {
+                if (!unitCells.containsKey(birth.getNewUnitID())) {
+                    addUnit(state, birth.getNewUnitID(), touched);
+                }
+            }
+            for (DeathLog death : statehistory.getDeathLogs(turn)) {
+                GraphNode cell = unitCells.remove(death.getDeadUnitID());
+                if (cell != null) {
+                    release(cell, touched);
+                }
+            }
+            for (ResourceNodeExhaustionLog exhaustion : statehistory.getResourceNodeExhaustionLogs(turn)) {
+                GraphNode cell = resourceCells.remove(exhaustion.getExhaustedNodeID());
+                if (cell != null) {
+                    release(cell, touched);
+                }
+            }
+        }
+        lastTurnRead = state.getTurnNumber();
+
+        // Follow the units that moved.
+        for (Map.Entry<Integer, GraphNode> entry : unitCells.entrySet()) {
+            UnitView unit = state.getUnit(entry.getKey());
+            GraphNode cell = entry.getValue();
+            if (unit != null && (unit.getXPosition() != cell.x || unit.getYPosition() != cell.y)) {
+                release(cell, touched);
+                GraphNode moved = new GraphNode(unit.getXPosition(), unit.getYPosition());
+                occupy(moved, touched);
+                entry.setValue(moved);
+            }
+        }
+
+        List<GraphNode> changed = new ArrayList<GraphNode>();
+        for (Map.Entry<GraphNode, Boolean> entry : touched.entrySet()) {
+            GraphNode cell = entry.getKey();
+            if (entry.getValue() != (nodes[cell.x][cell.y] != null)) {
+                changed.add(cell);
+                areas.setOpen(cell.x, cell.y, nodes[cell.x][cell.y] != null);
+            }
+        }
+        if (!changed.isEmpty()) {
+            version++;
+        }
+        return changed;
+    }
+
+    private void addUnit(StateView state, int id, Map<GraphNode, Boolean> touched) {
+        UnitView unit = state.getUnit(id);
+        if (unit == null || ignoredUnits.contains(id)) {
+            return;
+        }
+        GraphNode cell = new GraphNode(unit.getXPosition(), unit.getYPosition());
+        unitCells.put(id, cell);
+        if (touched == null) {
+            occupants[cell.x][cell.y]++;
+        } else {
+            occupy(cell, touched);
+        }
+    }
+
+    private void occupy(GraphNode cell, Map<GraphNode, Boolean> touched) {
+        remember(cell, touched);
+        occupants[cell.x][cell.y]++;
+        nodes[cell.x][cell.y] = null;
+    }
+
+    private void release(GraphNode cell, Map<GraphNode, Boolean> touched) {
+        remember(cell, touched);
+        occupants[cell.x][cell.y]--;
+        if (occupants[cell.x][cell.y] == 0) {
+            nodes[cell.x][cell.y] = new GraphNode(cell.x, cell.y);
+        }
+    }
+
+    // Records whether a cell was open before this update first touched it.
+    private void remember(GraphNode cell, Map<GraphNode, Boolean> touched) {
+        if (!touched.containsKey(cell)) {
+            touched.put(new GraphNode(cell.x, cell.y), nodes[cell.x][cell.y] != null);
+        }
+    }
+}
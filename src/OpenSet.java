@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+// A binary min-heap of WeightedNodes ordered by f(n), with at most one live
+// entry per map cell. Each node remembers its position in the heap so that a
+// cheaper route to an already queued cell can be applied in place. The index
+// of entries by cell is stamped with a generation, as in ClosedSet, so one
+// instance is cleared between searches without refilling it.
+public class OpenSet {
+    private WeightedNode heap[];
+    private WeightedNode entries[];
+    private int stamps[];
+    private int yExtent;
+    private int generation;
+    private int size;
+
+    public OpenSet(int xExtent, int yExtent) {
+        this.heap = new WeightedNode[64];
+        this.entries = new WeightedNode[xExtent * yExtent];
+        this.stamps = new int[xExtent * yExtent];
+        this.yExtent = yExtent;
+        this.generation = 1;
+        this.size = 0;
+    }
+
+    public boolean fits(int xExtent, int yExtent) {
+        return stamps.length == xExtent * yExtent && this.yExtent == yExtent;
+    }
+
+    public void clear() {
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            Arrays.fill(entries, null);
+            generation = 1;
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Returns the queued entry for the given cell, or null if it is not queued.
+    public WeightedNode get(GraphNode node) {
+        int index = node.x * yExtent + node.y;
+        return stamps[index] == generation ? entries[index] : null;
+    }
+
+    public void add(WeightedNode node) {
+        if (size == heap.length) {
+            WeightedNode grown[] = new WeightedNode[heap.length * 2];
+            System.arraycopy(heap, 0, grown, 0, size);
+            heap = grown;
+        }
+        heap[size] = node;
+        node.heapIndex = size;
+        int index = node.getNode().x * yExtent + node.getNode().y;
+        entries[index] = node;
+        stamps[index] = generation;
+        siftUp(size++);
+    }
+
+    // Removes and returns the node with the lowest cost.
+    public WeightedNode poll() {
+        WeightedNode first = heap[0];
+        heap[0] = heap[--size];
+        heap[0].heapIndex = 0;
+        heap[size] = null;
+        if (size > 0) {
+            siftDown(0);
+        }
+        first.heapIndex = -1;
+        entries[first.getNode().x * yExtent + first.getNode().y] = null;
+        return first;
+    }
+
+    // Reparents the queued node if the route through the given parent is
+    // cheaper. Returns true if the node was updated.
+    public boolean decreaseKey(WeightedNode node, WeightedNode parent) {
+        if (parent.getAccumulatedCost() + parent.getNode().distance(node.getNode()) >= node.getAccumulatedCost()) {
+            return false;
+        }
+        node.setParent(parent);
+        siftUp(node.heapIndex);
+        return true;
+    }
+
+    private void siftUp(int index) {
+        WeightedNode node = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!lessThan(node, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].heapIndex = index;
+            index = parent;
+        }
+        heap[index] = node;
+        node.heapIndex = index;
+    }
+
+    private void siftDown(int index) {
+        WeightedNode node = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && lessThan(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!lessThan(heap[child], node)) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = node;
+        node.heapIndex = index;
+    }
+
+    // Orders by f(n), preferring the node closer to the target on ties.
+    private boolean lessThan(WeightedNode a, WeightedNode b) {
+        int costA = a.getCost();
+        int costB = b.getCost();
+        if (costA != costB) {
+            return costA < costB;
+        }
+        return a.getHeuristicCost() < b.getHeuristicCost();
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Plans paths for many start and target pairs at once on a ForkJoin pool. The
+// batch is split in halves until each task holds only a few queries, and each
+// worker thread searches with a planner of its own, so the only thing the
+// threads share is the map, which every planner only reads.
+public class ParallelPathPlanner {
+    // Queries per task below which a task stops splitting.
+    private static final int THRESHOLD = 4;
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<PathPlanner> planners;
+    private final AtomicInteger expansions = new AtomicInteger();
+
+    public ParallelPathPlanner(String strategy) {
+        this(strategy, new ForkJoinPool());
+    }
+
+    public ParallelPathPlanner(final String strategy, ForkJoinPool pool) {
+        this.pool = pool;
+        this.planners = new ThreadLocal<PathPlanner>() {
+            @Override
+            protected PathPlanner initialValue() {
+                return SearchAgent.createPlanner(strategy);
+            }
+        };
+    }
+
+    // Returns one path per query, in the order of the starts, each as
+    // PathPlanner.getPathToTarget would return it.
+    public List<List<GraphNode>> getPaths(GraphNode map[][], List<GraphNode> starts, List<GraphNode> targets) {
+        if (starts.size() != targets.size()) {
+            throw new IllegalArgumentException("Got " + starts.size() + " starts but " + targets.size() + " targets");
+        }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<GraphNode> paths[] = new List[starts.size()];
+        expansions.set(0);
+        pool.invoke(new Batch(map, starts, targets, paths, 0, paths.length));
+        return new ArrayList<List<GraphNode>>(Arrays.asList(paths));
+    }
+
+    // The nodes expanded by every query of the last batch together.
+    public int getExpansions() {
+        return expansions.get();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final GraphNode map[][];
+        private final List<GraphNode> starts;
+        private final List<GraphNode> targets;
+        private final List<GraphNode> paths[];
+        private final int from;
+        private final int to;
+
+        Batch(GraphNode map[][], List<GraphNode> starts, List<GraphNode> targets, List<GraphNode> paths[],
+                int from, int to) {
+            this.map = map;
+            this.starts = starts;
+            this.targets = targets;
+            this.paths = paths;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                PathPlanner planner = planners.get();
+                for (int i = from; i < to; i++) {
+                    paths[i] = planner.getPathToTarget(map, starts.get(i), targets.get(i));
+                    expansions.addAndGet(planner.getExpansions());
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Batch(map, starts, targets, paths, from, middle),
+                    new Batch(map, starts, targets, paths, middle, to));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A bounded, least-recently-used cache of found paths, keyed by the map's
+// occupancy version and the start and target cells. Entries for older
+// versions can never be hit again, so they are dropped when the version moves.
+public class PathCache {
+    private final int capacity;
+    private final LinkedHashMap<Key, List<GraphNode>> paths;
+    private int version = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    public PathCache(int capacity) {
+        this.capacity = capacity;
+        this.paths = new LinkedHashMap<Key, List<GraphNode>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<GraphNode>> eldest) {
+                return size() > PathCache.this.capacity;
+            }
+        };
+    }
+
+    // Returns a copy of the cached path, or null on a miss.
+    public List<GraphNode> get(int version, GraphNode start, GraphNode target) {
+        List<GraphNode> path = version == this.version ? paths.get(new Key(version, start, target)) : null;
+        if (path == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<>(path);
+    }
+
+    public void put(int version, GraphNode start, GraphNode target, List<GraphNode> path) {
+        if (version != this.version) {
+            paths.clear();
+            this.version = version;
+        }
+        paths.put(new Key(version, start, target), new ArrayList<>(path));
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    private static class Key {
+        private final int version;
+        private final GraphNode start;
+        private final GraphNode target;
+
+        Key(int version, GraphNode start, GraphNode target) {
+            this.version = version;
+            this.start = new GraphNode(start.x, start.y);
+            this.target = new GraphNode(target.x, target.y);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return version == key.version && start.equals(key.start) && target.equals(key.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return (version * 31 + start.hashCode()) * 31 + target.hashCode();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+import java.util.List;
+
+// A search strategy the SearchAgent can use to reach a target. The map holds a
+// GraphNode for every open cell and null for every occupied one. Planners keep
+// scratch state between queries, so one instance must stay on one thread, but
+// they share no static state beyond their AgentLog sites, which are safe to
+// share, so separate instances can run in parallel.
+public interface PathPlanner {
+
+    // Returns the cells to move through, not including the initial cell, ending
+    // next to the target. Returns null if no such cell can be reached.
+    List<GraphNode> getPathToTarget(GraphNode map[][], GraphNode initial, GraphNode target);
+
+    // The number of nodes the last query expanded.
+    int getExpansions();
+
+    // The number of nodes the last query put on its open set, counting a node
+    // again each time it was queued again rather than updated in place.
+    int getGenerated();
+
+    // The most entries the last query's open set held at once.
+    int getPeakOpenSize();
+}
@@ -24,10 +24,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 
 import edu.cwru.sepia.action.Action;
 import edu.cwru.sepia.action.ActionType;
@@ -35,11 +35,9 @@ import edu.cwru.sepia.action.TargetedAction;
 import edu.cwru.sepia.environment.model.history.History;
 import edu.cwru.sepia.environment.model.persistence.UnitTemplateAdapter;
 import edu.cwru.sepia.environment.model.state.ResourceType;
-import edu.cwru.sepia.environment.model.state.ResourceNode.Type;
 import edu.cwru.sepia.environment.model.state.State.StateView;
 import edu.cwru.sepia.environment.model.state.Template.TemplateView;
 import edu.cwru.sepia.environment.model.state.Unit;
-import edu.cwru.sepia.environment.model.state.Unit.UnitView;
 import edu.cwru.sepia.environment.model.state.UnitTemplate;
 import edu.cwru.sepia.environment.model.state.UnitTemplate.UnitTemplateView;
 import edu.cwru.sepia.experiment.Configuration;
@@ -47,197 +45,182 @@ import edu.cwru.sepia.experiment.ConfigurationValues;
 import edu.cwru.sepia.agent.Agent;
 
 /**
- * This agent will first collect gold to produce a peasant,
- * then the two peasants will collect gold and wood separately until reach goal.
+ * This agent builds a Farm, a Barracks and two Footmen, in the order and with
+ * as many peasants as the build-order planner finds fastest, gathers gold and
+ * wood until reach goal, and sends the Footmen to attack.
  * @author Feng
  *
  */
 public class RCAgent extends Agent {
 	private static final long serialVersionUID = -4047208702628325380L;
-	private static final Logger logger = Logger.getLogger(RCAgent.class.getCanonicalName());
+	// Where the agent reports to the console. The attack is ordered every
+	// turn, so it is reported at most once a second.
+	private static final AgentLog.Site LOG = new AgentLog.Site("RCAgent", Level.INFO);
+	private static final AgentLog.Site DEBUG = new AgentLog.Site("RCAgent", Level.FINE);
+	private static final AgentLog.Site ATTACKS = new AgentLog.Site("attack", Level.INFO, 1);
 
 	private int goldRequired;
 	private int woodRequired;
+	// Whether production takes the time its template gives rather than one step.
+	private boolean durative;
 	
 	private int step;
 	
+	// Turns an order may fall behind its plan before the build is planned again.
+	private static final int DRIFT_TURNS = 5;
+	
 	public RCAgent(int playernum, String[] arguments) {
 		super(playernum);
 		
 		goldRequired = Integer.parseInt(arguments[0]);
 		woodRequired = Integer.parseInt(arguments[1]);
+		durative = arguments.length > 2 && arguments[2].equals("durative");
 	}
 
 	StateView currentState;
 	
+	// This player's units by template, kept up to date from the birth and death logs.
+	UnitRegistry units;
+	
+	// The resource nodes left, indexed by position.
+	ResourceIndex resources;
+	
+	// Decides which node each peasant gathers from.
+	GatherScheduler scheduler;
+	
+	// Decides what to build and when, and the plan it gave last.
+	BuildOrderPlanner planner;
+	List<BuildOrderPlanner.Step> plan;
+	int planIndex;
+	
 	@Override
 	public Map<Integer, Action> initialStep(StateView newstate, History.HistoryView statehistory) {
 		step = 0;
+		units = new UnitRegistry(newstate, playernum);
+		resources = new ResourceIndex(newstate);
+		scheduler = new GatherScheduler(resources);
+		Map<String, Integer> army = new LinkedHashMap<String, Integer>();
+		army.put("Farm", 1);
+		army.put("Barracks", 1);
+		army.put("Footman", 2);
+		planner = new BuildOrderPlanner(newstate, playernum, army, goldRequired, woodRequired, durative);
+		plan = null;
 		return middleStep(newstate, statehistory);
 	}
 
 	@Override
 	public Map<Integer,Action> middleStep(StateView newState, History.HistoryView statehistory) {
 		step++;
-		if(logger.isLoggable(Level.FINE))
-		{
-			logger.fine("=> Step: " + step);
-		}
+		DEBUG.log("=> Step: %d", step);
 		
 		Map<Integer,Action> builder = new HashMap<Integer,Action>();
 		currentState = newState;
 		
 		int currentGold = currentState.getResourceAmount(0, ResourceType.GOLD);
 		int currentWood = currentState.getResourceAmount(0, ResourceType.WOOD);
-		if(logger.isLoggable(Level.FINE))
-		{
-			logger.fine("Current Gold: " + currentGold);
-		}
-		if(logger.isLoggable(Level.FINE))
-		{
-			logger.fine("Current Wood: " + currentWood);
-		}
-		List<Integer> myUnitIds = currentState.getUnitIds(playernum);
-		List<Integer> peasantIds = new ArrayList<Integer>();
-		List<Integer> townhallIds = new ArrayList<Integer>();
-		List<Integer> farmIds = new ArrayList<Integer>();
-		List<Integer> barracksIds = new ArrayList<Integer>();
-		List<Integer> footmanIds = new ArrayList<Integer>();
-		for(int i=0; i<myUnitIds.size(); i++) {
-			int id = myUnitIds.get(i);
-			UnitView unit = currentState.getUnit(id);
-			String unitTypeName = unit.getTemplateView().getName();
-			System.out.println("Unit Type Name: " + unitTypeName);
-			if(unitTypeName.equals("TownHall"))
-				townhallIds.add(id);
-			if(unitTypeName.equals("Peasant"))
-				peasantIds.add(id);
-			if(unitTypeName.equals("Farm"))
-				farmIds.add(id);
-			if(unitTypeName.equals("Barracks"))
-				barracksIds.add(id);
-			if(unitTypeName.equals("Footman"))
-				footmanIds.add(id);
+		DEBUG.log("Current Gold: %d", currentGold);
+		DEBUG.log("Current Wood: %d", currentWood);
+		units.update(currentState, statehistory);
+		resources.update(currentState, statehistory);
+		List<Integer> peasantIds = units.getUnits("Peasant");
+		List<Integer> townhallIds = units.getUnits("TownHall");
+		List<Integer> footmanIds = units.getUnits("Footman");
+		int townhallId = townhallIds.get(0);
+		
+		boolean drifted = planner.update(currentState, units);
+		if(plan == null || drifted || isBehindPlan()) {
+			plan = planner.plan(currentState, units, scheduler, townhallId, plan == null ? null : plan.subList(planIndex, plan.size()));
+			planIndex = 0;
+			LOG.log("Build order: %s, done by turn %d", plan, planner.getMakespan());
 		}
+		BuildOrderPlanner.Step next = planIndex < plan.size() ? plan.get(planIndex) : null;
 		
-		List<Integer> enemyUnitIds = currentState.getAllUnitIds();
-		enemyUnitIds.removeAll(myUnitIds);
+		// Gather toward what the plan aims at until the next order, or toward the goal once everything is ordered.
+		List<Integer> gathererIds = new ArrayList<Integer>();
+		for (int peasantId : peasantIds) {
+			if(!planner.isBusy(peasantId))
+				gathererIds.add(peasantId);
+		}
+		if(next == null)
+			gatherAll(builder, gathererIds, townhallId, goldRequired - currentGold, woodRequired - currentWood);
+		else
+			gatherAll(builder, gathererIds, townhallId, next.aimGold - currentGold, next.aimWood - currentWood);
 		
-		if(peasantIds.size()>=3) {  // collect resources
-			if (farmIds.size() < 1 && currentGold >= 500 && currentWood >= 250) {
-				System.out.println("Building a Farm");
-				int peasantId = peasantIds.get(0);
-				Action b = Action.createPrimitiveBuild(peasantId, currentState.getTemplate(playernum, "Farm").getID());
-				builder.put(peasantId, b);
-			} else if (barracksIds.size() < 1 && currentGold >= 700 && currentWood >= 400) {
-				System.out.println("Building a Barracks");
-				int peasantId = peasantIds.get(0);
-				Action b = Action.createPrimitiveBuild(peasantId, currentState.getTemplate(playernum, "Barracks").getID());
-				builder.put(peasantId, b);
-			} else if(barracksIds.size() > 0 && footmanIds.size() < 2 && currentGold >= 600) {
-				System.out.println("Building a Footman");
-				int barracksId = barracksIds.get(0);
-				Action b = Action.createCompoundProduction(barracksId, currentState.getTemplate(playernum, "Footman").getID());
-				builder.put(barracksId, b);
-			} else {
-				if (footmanIds.size() >= 2) { //attack enemies
-					System.out.println("Attacking enemies");
-					for (int i : footmanIds) {
-						Action b = Action.createCompoundAttack(i, enemyUnitIds.get(0));
-						builder.put(i, b);
-					}
-				}
-				
-				int peasantId = peasantIds.get(1);
-				int townhallId = townhallIds.get(0);
-				Action b = null;
-				if(currentState.getUnit(peasantId).getCargoAmount()>0)
-					b = new TargetedAction(peasantId, ActionType.COMPOUNDDEPOSIT, townhallId);
-				else {
-					List<Integer> resourceIds = currentState.getResourceNodeIds(Type.TREE);
-					b = new TargetedAction(peasantId, ActionType.COMPOUNDGATHER, resourceIds.get(0));
-				}
-				builder.put(peasantId, b);
-				
-				peasantId = peasantIds.get(0);
-				if(currentState.getUnit(peasantId).getCargoType() == ResourceType.GOLD && currentState.getUnit(peasantId).getCargoAmount()>0)
-					b = new TargetedAction(peasantId, ActionType.COMPOUNDDEPOSIT, townhallId);
-				else {
-					List<Integer> resourceIds = currentState.getResourceNodeIds(Type.GOLD_MINE);
-					b = new TargetedAction(peasantId, ActionType.COMPOUNDGATHER, resourceIds.get(0));
-				}
-				builder.put(peasantId, b);
-				
-				peasantId = peasantIds.get(2);
-				if(currentState.getUnit(peasantId).getCargoType() == ResourceType.GOLD && currentState.getUnit(peasantId).getCargoAmount()>0)
-					b = new TargetedAction(peasantId, ActionType.COMPOUNDDEPOSIT, townhallId);
-				else {
-					List<Integer> resourceIds = currentState.getResourceNodeIds(Type.GOLD_MINE);
-					b = new TargetedAction(peasantId, ActionType.COMPOUNDGATHER, resourceIds.get(0));
-				}
-				
-				builder.put(peasantId, b);
+		if(next != null && currentGold >= next.goldCost && currentWood >= next.woodCost) {
+			int producerId = getProducer(next.producer);
+			if(producerId >= 0) {
+				LOG.log("Building a %s", next.name);
+				Action b;
+				if(next.producer.equals("Peasant"))
+					b = Action.createPrimitiveBuild(producerId, next.templateId);
+				else
+					b = Action.createCompoundProduction(producerId, next.templateId);
+				builder.put(producerId, b);
+				planner.ordered(next.name, producerId, currentState, units);
+				planIndex++;
 			}
 		}
-		else {  // build peasant
-			if(currentGold>=400) {
-				System.out.println("Building peasant");
-				if(logger.isLoggable(Level.FINE))
-				{
-					logger.fine("already have enough gold to produce a new peasant.");
-				}
-				TemplateView peasanttemplate = currentState.getTemplate(playernum, "Peasant");
-				int peasanttemplateID = peasanttemplate.getID();
-				if(logger.isLoggable(Level.FINE))
-				{
-					logger.fine(String.valueOf(peasanttemplate.getID()));
-				}
-				int townhallID = townhallIds.get(0);
-					builder.put(townhallID, Action.createCompoundProduction(townhallID, peasanttemplateID));
-			} else {
-				System.out.println("Collecting gold");
-				int peasantId = peasantIds.get(0);
-				int townhallId = townhallIds.get(0);
-				Action b = null;
-				if(currentState.getUnit(peasantId).getCargoType() == ResourceType.GOLD && currentState.getUnit(peasantId).getCargoAmount()>0)
-					b = new TargetedAction(peasantId, ActionType.COMPOUNDDEPOSIT, townhallId);
-				else {
-					List<Integer> resourceIds = currentState.getResourceNodeIds(Type.GOLD_MINE);
-					b = new TargetedAction(peasantId, ActionType.COMPOUNDGATHER, resourceIds.get(0));
-				}
-				builder.put(peasantId, b);
+		
+		if (footmanIds.size() >= 2) { //attack enemies
+			ATTACKS.log("Attacking enemies");
+			List<Integer> enemyUnitIds = currentState.getAllUnitIds();
+			enemyUnitIds.removeAll(currentState.getUnitIds(playernum));
+			for (int i : footmanIds) {
+				Action b = Action.createCompoundAttack(i, enemyUnitIds.get(0));
+				builder.put(i, b);
 			}
 		}
 		return builder;
 	}
 
+	// True once the next order is well past the turn the plan gave it.
+	private boolean isBehindPlan() {
+		return planIndex < plan.size() && currentState.getTurnNumber() > plan.get(planIndex).turn + DRIFT_TURNS;
+	}
+	
+	// A unit of the given kind free to take an order, preferring one not
+	// carrying a load, or -1 if there is none.
+	private int getProducer(String name) {
+		int producerId = -1;
+		for (int id : units.getUnits(name)) {
+			if(planner.isBusy(id))
+				continue;
+			if(currentState.getUnit(id).getCargoAmount() == 0)
+				return id;
+			if(producerId < 0)
+				producerId = id;
+		}
+		return producerId;
+	}
+
+	// Sends every peasant carrying a load to the town hall and the rest to the
+	// nodes the scheduler picks for the gold and wood still wanted.
+	private void gatherAll(Map<Integer, Action> builder, List<Integer> peasantIds, int townhallId, int goldWanted, int woodWanted) {
+		Map<Integer, Integer> nodes = scheduler.assign(currentState, peasantIds, townhallId, goldWanted, woodWanted);
+		for (int peasantId : peasantIds) {
+			if(currentState.getUnit(peasantId).getCargoAmount()>0)
+				builder.put(peasantId, new TargetedAction(peasantId, ActionType.COMPOUNDDEPOSIT, townhallId));
+			else if(nodes.containsKey(peasantId))
+				builder.put(peasantId, new TargetedAction(peasantId, ActionType.COMPOUNDGATHER, nodes.get(peasantId)));
+		}
+	}
+
 	@Override
 	public void terminalStep(StateView newstate, History.HistoryView statehistory) {
 		step++;
-		if(logger.isLoggable(Level.FINE))
-		{
-			logger.fine("=> Step: " + step);
-		}
+		DEBUG.log("=> Step: %d", step);
 		
 		int currentGold = newstate.getResourceAmount(0, ResourceType.GOLD);
 		int currentWood = newstate.getResourceAmount(0, ResourceType.WOOD);
 		
-		if(logger.isLoggable(Level.FINE))
-		{
-			logger.fine("Current Gold: " + currentGold);
-		}
-		if(logger.isLoggable(Level.FINE))
-		{
-			logger.fine("Current Wood: " + currentWood);
-		}
-		if(logger.isLoggable(Level.FINE))
-		{
-			logger.fine("Congratulations! You have finished the task!");
-		}
+		DEBUG.log("Current Gold: %d", currentGold);
+		DEBUG.log("Current Wood: %d", currentWood);
+		DEBUG.log("Congratulations! You have finished the task!");
+		AgentLog.flush();
 	}
 	
 	public static String getUsage() {
-		return "Two arguments, amount of gold to gather and amount of wood to gather";
+		return "Two arguments, amount of gold to gather and amount of wood to gather, and optionally \"durative\" if production takes the time its template gives";
 	}
 	@Override
 	public void savePlayerData(OutputStream os) {
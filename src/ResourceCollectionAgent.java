@@ -21,22 +21,18 @@
 
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 
 import edu.cwru.sepia.action.Action;
 import edu.cwru.sepia.action.ActionType;
 import edu.cwru.sepia.action.TargetedAction;
 import edu.cwru.sepia.environment.model.history.History;
 import edu.cwru.sepia.environment.model.state.ResourceType;
-import edu.cwru.sepia.environment.model.state.ResourceNode.Type;
 import edu.cwru.sepia.environment.model.state.State.StateView;
 import edu.cwru.sepia.environment.model.state.Template.TemplateView;
-import edu.cwru.sepia.environment.model.state.Unit.UnitView;
 //import edu.cwru.sepia.experiment.Configuration;
 //import edu.cwru.sepia.experiment.ConfigurationValues;
 import edu.cwru.sepia.agent.Agent;
@@ -50,8 +46,8 @@ import edu.cwru.sepia.agent.Agent;
  */
 public class ResourceCollectionAgent extends Agent {
 	private static final long serialVersionUID = -4047208702628325380L;
-	private static final Logger logger = Logger
-			.getLogger(ResourceCollectionAgent.class.getCanonicalName());
+	private static final AgentLog.Site DEBUG = new AgentLog.Site(
+			"ResourceCollectionAgent", Level.FINE);
 
 	private int goldRequired;
 	private int woodRequired;
@@ -67,10 +63,23 @@ public class ResourceCollectionAgent extends Agent {
 
 	StateView currentState;
 
+	// This player's units by template, kept up to date from the birth and
+	// death logs.
+	UnitRegistry units;
+
+	// The resource nodes left, indexed by position.
+	ResourceIndex resources;
+
+	// Decides which node each peasant gathers from.
+	GatherScheduler scheduler;
+
 	@Override
 	public Map<Integer, Action> initialStep(StateView newstate,
 			History.HistoryView statehistory) {
 		step = 0;
+		units = new UnitRegistry(newstate, playernum);
+		resources = new ResourceIndex(newstate);
+		scheduler = new GatherScheduler(resources);
 		return middleStep(newstate, statehistory);
 	}
 
@@ -78,122 +87,73 @@ public class ResourceCollectionAgent extends Agent {
 	public Map<Integer, Action> middleStep(StateView newState,
 			History.HistoryView statehistory) {
 		step++;
-		if (logger.isLoggable(Level.FINE)) {
-			logger.fine("=> Step: " + step);
-		}
+		DEBUG.log("=> Step: %d", step);
 
 		Map<Integer, Action> builder = new HashMap<Integer, Action>();
 		currentState = newState;
 
 		int currentGold = currentState.getResourceAmount(0, ResourceType.GOLD);
 		int currentWood = currentState.getResourceAmount(0, ResourceType.WOOD);
-		if (logger.isLoggable(Level.FINE)) {
-			logger.fine("Current Gold: " + currentGold);
-		}
-		if (logger.isLoggable(Level.FINE)) {
-			logger.fine("Current Wood: " + currentWood);
-		}
-		List<Integer> allUnitIds = currentState.getAllUnitIds();
-		List<Integer> peasantIds = new ArrayList<Integer>();
-		List<Integer> townhallIds = new ArrayList<Integer>();
-		for (int i = 0; i < allUnitIds.size(); i++) {
-			int id = allUnitIds.get(i);
-			UnitView unit = currentState.getUnit(id);
-			String unitTypeName = unit.getTemplateView().getName();
-			if (unitTypeName.equals("TownHall"))
-				townhallIds.add(id);
-			if (unitTypeName.equals("Peasant"))
-				peasantIds.add(id);
-		}
+		DEBUG.log("Current Gold: %d", currentGold);
+		DEBUG.log("Current Wood: %d", currentWood);
+		units.update(currentState, statehistory);
+		resources.update(currentState, statehistory);
+		List<Integer> peasantIds = units.getUnits("Peasant");
+		List<Integer> townhallIds = units.getUnits("TownHall");
 
 		if (peasantIds.size() >= 2) { // collect resources
-			if (currentWood < woodRequired) {
-				int peasantId = peasantIds.get(1);
-				int townhallId = townhallIds.get(0);
-				Action b = null;
-				if (currentState.getUnit(peasantId).getCargoAmount() > 0)
-					b = new TargetedAction(peasantId,
-							ActionType.COMPOUNDDEPOSIT, townhallId);
-				else {
-					List<Integer> resourceIds = currentState
-							.getResourceNodeIds(Type.TREE);
-					b = new TargetedAction(peasantId,
-							ActionType.COMPOUNDGATHER, resourceIds.get(0));
-				}
-				builder.put(peasantId, b);
-			}
-			if (currentGold < goldRequired) {
-				int peasantId = peasantIds.get(0);
-				int townhallId = townhallIds.get(0);
-				Action b = null;
-				if (currentState.getUnit(peasantId).getCargoType() == ResourceType.GOLD
-						&& currentState.getUnit(peasantId).getCargoAmount() > 0)
-					b = new TargetedAction(peasantId,
-							ActionType.COMPOUNDDEPOSIT, townhallId);
-				else {
-					List<Integer> resourceIds = currentState
-							.getResourceNodeIds(Type.GOLD_MINE);
-					b = new TargetedAction(peasantId,
-							ActionType.COMPOUNDGATHER, resourceIds.get(0));
-				}
-				builder.put(peasantId, b);
-			}
+			gatherAll(builder, peasantIds, townhallIds.get(0), goldRequired
+					- currentGold, woodRequired - currentWood);
 		} else { // build peasant
 			if (currentGold >= 400) {
 				// System.out.println("Building peasant");
-				if (logger.isLoggable(Level.FINE)) {
-					logger.fine("already have enough gold to produce a new peasant.");
-				}
+				DEBUG.log("already have enough gold to produce a new peasant.");
 				TemplateView peasanttemplate = currentState.getTemplate(
 						playernum, "Peasant");
 				int peasanttemplateID = peasanttemplate.getID();
-				if (logger.isLoggable(Level.FINE)) {
-					logger.fine(String.valueOf(peasanttemplate.getID()));
-				}
+				DEBUG.log("%d", peasanttemplate.getID());
 				int townhallID = townhallIds.get(0);
 				builder.put(townhallID, Action.createCompoundProduction(
 						townhallID, peasanttemplateID));
 			} else {
 				// System.out.println("Collecting gold");
-				int peasantId = peasantIds.get(0);
-				int townhallId = townhallIds.get(0);
-				Action b = null;
-				if (currentState.getUnit(peasantId).getCargoType() == ResourceType.GOLD
-						&& currentState.getUnit(peasantId).getCargoAmount() > 0)
-					b = new TargetedAction(peasantId,
-							ActionType.COMPOUNDDEPOSIT, townhallId);
-				else {
-					List<Integer> resourceIds = currentState
-							.getResourceNodeIds(Type.GOLD_MINE);
-					b = new TargetedAction(peasantId,
-							ActionType.COMPOUNDGATHER, resourceIds.get(0));
-				}
-				builder.put(peasantId, b);
+				gatherAll(builder, peasantIds, townhallIds.get(0),
+						400 - currentGold, 0);
 			}
 		}
 		return builder;
 	}
 
+	// Sends every peasant carrying a load to the town hall and the rest to the
+	// nodes the scheduler picks for the gold and wood still wanted.
+	private void gatherAll(Map<Integer, Action> builder,
+			List<Integer> peasantIds, int townhallId, int goldWanted,
+			int woodWanted) {
+		Map<Integer, Integer> nodes = scheduler.assign(currentState,
+				peasantIds, townhallId, goldWanted, woodWanted);
+		for (int peasantId : peasantIds) {
+			if (currentState.getUnit(peasantId).getCargoAmount() > 0)
+				builder.put(peasantId, new TargetedAction(peasantId,
+						ActionType.COMPOUNDDEPOSIT, townhallId));
+			else if (nodes.containsKey(peasantId))
+				builder.put(peasantId, new TargetedAction(peasantId,
+						ActionType.COMPOUNDGATHER, nodes.get(peasantId)));
+		}
+	}
+
 	@Override
 	public void terminalStep(StateView newstate,
 			History.HistoryView statehistory) {
 		step++;
-		if (logger.isLoggable(Level.FINE)) {
-			logger.fine("=> Step: " + step);
-		}
+		DEBUG.log("=> Step: %d", step);
 
 		int currentGold = newstate.getResourceAmount(0, ResourceType.GOLD);
 		int currentWood = newstate.getResourceAmount(0, ResourceType.WOOD);
 
-		if (logger.isLoggable(Level.FINE)) {
-			logger.fine("Current Gold: " + currentGold);
-		}
-		if (logger.isLoggable(Level.FINE)) {
-			logger.fine("Current Wood: " + currentWood);
-		}
-		if (logger.isLoggable(Level.FINE)) {
-			logger.fine("Congratulations! You have finished the task!");
-		}
+		DEBUG.log("Current Gold: %d", currentGold);
+		DEBUG.log("Current Wood: %d", currentWood);
+		DEBUG.log("Congratulations! You have finished the task!");
+		AgentLog.flush();
 	}
 
 	public static String getUsage() {
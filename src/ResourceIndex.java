@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cwru.sepia.environment.model.history.History;
+import edu.cwru.sepia.environment.model.history.ResourceNodeExhaustionLog;
+import edu.cwru.sepia.environment.model.state.ResourceNode.ResourceView;
+import edu.cwru.sepia.environment.model.state.ResourceNode.Type;
+import edu.cwru.sepia.environment.model.state.State.StateView;
+
+// The resource nodes of the map in a uniform grid of buckets, one grid per
+// node type, so the nearest tree or mine to a cell is found by looking at
+// the buckets around it ring by ring instead of at every node. Distances are
+// Chebyshev distances, the number of moves on the 8-connected map. Exhausted
+// nodes are taken out as the exhaustion logs report them.
+public class ResourceIndex {
+    // Cells per side of a bucket.
+    private static final int BUCKET_SIZE = 4;
+
+    private static final Comparator<int[]> BY_DISTANCE = new Comparator<int[]>() {
+        @Override
+        public int compare(int a[], int b[]) {
+            return a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]);
+        }
+    };
+
+    private final int columns;
+    private final int rows;
+    private final Map<Type, List<int[]>[]> buckets = new HashMap<Type, List<int[]>[]>();
+    // Each node as {id, x, y} and its type, by ID, to find its bucket again.
+    private final Map<Integer, int[]> nodes = new HashMap<Integer, int[]>();
+    private final Map<Integer, Type> types = new HashMap<Integer, Type>();
+    private int lastTurnRead;
+
+    public ResourceIndex(StateView state) {
+        columns = (state.getXExtent() + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        rows = (state.getYExtent() + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        for (ResourceView resource : state.getAllResourceNodes()) {
+            if (resource.getAmountRemaining() > 0) {
+                add(resource.getID(), resource.getType(), resource.getXPosition(), resource.getYPosition());
+            }
+        }
+        lastTurnRead = state.getTurnNumber();
+    }
+
+    // Drops the nodes exhausted since the last update.
+    public void update(StateView state, History.HistoryView statehistory) {
+        for (int turn = lastTurnRead; turn < state.getTurnNumber(); turn++) {
+            for (ResourceNodeExhaustionLog exhaustion : statehistory.getResourceNodeExhaustionLogs(turn)) {
+                remove(exhaustion.getExhaustedNodeID());
+            }
+        }
+        lastTurnRead = state.getTurnNumber();
+    }
+
+    // The ID of the node of the given type nearest to a cell, or -1 if none is left.
+    public int getNearest(Type type, int x, int y) {
+        List<Integer> nearest = getNearest(type, x, y, 1);
+        return nearest.isEmpty() ? -1 : nearest.get(0);
+    }
+
+    // The IDs of up to count nodes of the given type nearest to a cell,
+    // nearest first, ties going to the lower ID.
+    public List<Integer> getNearest(Type type, int x, int y, int count) {
+        List<Integer> nearest = new ArrayList<Integer>();
+        List<int[]> grid[] = buckets.get(type);
+        if (grid == null || count <= 0) {
+            return nearest;
+        }
+        int column = Math.min(x / BUCKET_SIZE, columns - 1);
+        int row = Math.min(y / BUCKET_SIZE, rows - 1);
+        // Each node seen so far as {distance, id}, kept sorted.
+        List<int[]> found = new ArrayList<int[]>();
+        int maxRing = Math.max(Math.max(column, columns - 1 - column), Math.max(row, rows - 1 - row));
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every cell in this ring of buckets is at least this far away.
+            if (found.size() >= count && (ring - 1) * BUCKET_SIZE + 1 > found.get(count - 1)[0]) {
+                break;
+            }
+            for (int i = column - ring; i <= column + ring; i++) {
+                for (int j = row - ring; j <= row + ring; j++) {
+                    if (i < 0 || j < 0 || i >= columns || j >= rows
+                            || (Math.abs(i - column) != ring && Math.abs(j - row) != ring)) {
+                        continue;
+                    }
+                    for (int node[] : grid[i * rows + j]) {
+                        found.add(new int[] { Math.max(Math.abs(node[1] - x), Math.abs(node[2] - y)), node[0] });
+                    }
+                }
+            }
+            Collections.sort(found, BY_DISTANCE);
+        }
+        for (int i = 0; i < Math.min(count, found.size()); i++) {
+            nearest.add(found.get(i)[1]);
+        }
+        return nearest;
+    }
+
+    private void add(int id, Type type, int x, int y) {
+        List<int[]> grid[] = buckets.get(type);
+        if (grid == null) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            List<int[]> created[] = new List[columns * rows];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new ArrayList<int[]>();
+            }
+            grid = created;
+            buckets.put(type, grid);
+        }
+        int node[] = { id, x, y };
+        grid[(x / BUCKET_SIZE) * rows + y / BUCKET_SIZE].add(node);
+        nodes.put(id, node);
+        types.put(id, type);
+    }
+
+    private void remove(int id) {
+        int node[] = nodes.remove(id);
+        if (node == null) {
+            return;
+        }
+        buckets.get(types.remove(id))[(node[1] / BUCKET_SIZE) * rows + node[2] / BUCKET_SIZE].remove(node);
+    }
+}
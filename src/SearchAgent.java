@@ -22,11 +22,18 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 
 import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.action.ActionFeedback;
+import edu.cwru.sepia.action.ActionResult;
+import edu.cwru.sepia.action.ActionType;
 import edu.cwru.sepia.agent.Agent;
 import edu.cwru.sepia.environment.model.history.History;
 import edu.cwru.sepia.environment.model.state.State.StateView;
@@ -43,132 +50,400 @@ import edu.cwru.sepia.util.Direction;
 public class SearchAgent extends Agent {
     private static final long serialVersionUID = -4047208702628325380L;
 
+    // Where the agent reports to the console. The messages given every turn
+    // are limited to a few a second so a long run is not held up writing them.
+    private static final AgentLog.Site LOG = new AgentLog.Site("SearchAgent", Level.INFO);
+    private static final AgentLog.Site WARNINGS = new AgentLog.Site("SearchAgent", Level.WARNING);
+    private static final AgentLog.Site SEARCHES = new AgentLog.Site("search", Level.INFO, 10);
+    private static final AgentLog.Site PATH_NODES = new AgentLog.Site("path", Level.FINE);
+    private static final AgentLog.Site WEIGHTING = new AgentLog.Site("weighting", Level.FINE);
+    private static final AgentLog.Site MOVES = new AgentLog.Site("move", Level.INFO, 10);
+    private static final AgentLog.Site ATTACKS = new AgentLog.Site("attack", Level.INFO, 1);
+
     private int step;
 
+    // The search strategy from the first agent argument.
+    private PathPlanner planner = new AStarSearch();
+
+    // Set when the strategy is dstar, which repairs the path every turn instead
+    // of following the one found in initialStep.
+    private DStarLite replanner = null;
+
+    // Set when the strategy is anytime, which searches for at most a budget
+    // per turn, following its best path so far while it keeps refining it.
+    private AnytimePlanner refiner = null;
+
+    // The anytime planner's first weight, how much each pass lowers it, and
+    // its default budget per turn, which a second agent argument overrides.
+    private static final double ANYTIME_EPSILON = 3.0;
+    private static final double ANYTIME_EPSILON_STEP = 0.5;
+    private static final long ANYTIME_BUDGET_MS = 10;
+
+    // How many landmarks the alt strategy measures distances from.
+    private static final int LANDMARKS = 8;
+
+    // The weighted strategy's default epsilon, which a second agent argument
+    // overrides: its paths cost at most (1 + epsilon) times the optimal.
+    private static final double WEIGHTED_EPSILON = 0.2;
+
+    // Set when the strategy is weighted, to also run the exact search once
+    // per query and report how many expansions the weighting saved.
+    private GridAStar exactSearch = null;
+
+    // Set when the strategy is cooperative, which plans every footman at once
+    // against a shared reservation table and re-plans them every turn.
+    private CooperativePlanner cooperative = null;
+
+    // How many steps ahead the cooperative planner reserves.
+    private static final int COOPERATIVE_WINDOW = 8;
+
+    // Set when the strategy is flowfield: every footman follows one field
+    // towards the town hall, rebuilt only when the map version moves.
+    private boolean useFlowField = false;
+    private FlowField flowField = null;
+    private int flowFieldVersion = -1;
+
+    // Set by a "waypoints" agent argument: the path is cut into straight runs
+    // and the footman is sent to the end of each with one compound move, so
+    // the agent only acts again when a run completes or fails.
+    private boolean useWaypoints = false;
+    private List<GraphNode> waypoints = null;
+    private int waypointIndex = 0;
+    private boolean commandPending = false;
+
+    // Statistics of every search, appended to METRICS_FILE in the working
+    // directory at the end of each episode when a "metrics" agent argument asks.
+    private static final String METRICS_FILE = "searchMetrics.jsonl";
+    private SearchMetrics metrics;
+
+    // How many move actions the agent gave, and over how many turns of moving.
+    private int moveActions = 0;
+    private int moveTurns = 0;
+    private boolean attacking = false;
+
     public SearchAgent(int playernum, String[] arguments) {
         super(playernum);
+
+        // The waypoints and metrics flags may follow the strategy anywhere; they
+        // are not the strategy's own argument.
+        boolean useMetrics = false;
+        if (arguments != null) {
+            List<String> remaining = new ArrayList<String>();
+            for (String argument : arguments) {
+                if (argument.trim().equalsIgnoreCase("waypoints")) {
+                    useWaypoints = true;
+                } else if (argument.trim().equalsIgnoreCase("metrics")) {
+                    useMetrics = true;
+                } else {
+                    remaining.add(argument);
+                }
+            }
+            arguments = remaining.toArray(new String[remaining.size()]);
+        }
+        metrics = new SearchMetrics(useMetrics);
+
+        if (arguments != null && arguments.length > 0) {
+            if (arguments[0].trim().equalsIgnoreCase("cooperative")) {
+                cooperative = new CooperativePlanner(COOPERATIVE_WINDOW);
+            } else if (arguments[0].trim().equalsIgnoreCase("flowfield")) {
+                useFlowField = true;
+            } else {
+                planner = createPlanner(arguments[0]);
+            }
+        }
+        if (planner instanceof DStarLite) {
+            replanner = (DStarLite) planner;
+        }
+        if (planner instanceof AnytimePlanner) {
+            if (arguments.length > 1) {
+                long budget = Long.parseLong(arguments[1].trim());
+                planner = new AnytimePlanner(ANYTIME_EPSILON, ANYTIME_EPSILON_STEP, budget * 1000000L, 0);
+            }
+            refiner = (AnytimePlanner) planner;
+        }
+        if (arguments != null && arguments.length > 0 && arguments[0].trim().equalsIgnoreCase("weighted")) {
+            if (arguments.length > 1) {
+                planner = new GridAStar(1 + Double.parseDouble(arguments[1].trim()));
+            }
+            exactSearch = new GridAStar();
+        }
+        if (useWaypoints && (replanner != null || refiner != null || cooperative != null || useFlowField)) {
+            WARNINGS.log("The waypoints option only applies to strategies that plan once, ignoring it");
+            useWaypoints = false;
+        }
+    }
+
+    // Returns the planner for a strategy name, falling back to A*.
+    static PathPlanner createPlanner(String strategy) {
+        switch (strategy.trim().toLowerCase()) {
+        case "jps":
+            return new JumpPointSearch();
+        case "hpa":
+            return new HierarchicalPlanner();
+        case "dstar":
+            return new DStarLite();
+        case "bidirectional":
+            return new BidirectionalSearch();
+        case "compact":
+            return new GridAStar();
+        case "alt":
+            return new AStarSearch(new LandmarkHeuristic(LANDMARKS));
+        case "weighted":
+            return new GridAStar(1 + WEIGHTED_EPSILON);
+        case "anytime":
+            return new AnytimePlanner(ANYTIME_EPSILON, ANYTIME_EPSILON_STEP, ANYTIME_BUDGET_MS * 1000000L, 0);
+        case "astar":
+            return new AStarSearch();
+        default:
+            WARNINGS.log("Unknown search strategy \"%s\", using astar", strategy);
+            return new AStarSearch();
+        }
     }
 
     List<GraphNode> path = new ArrayList<GraphNode>();
+    // The next step to take along the path, so steps are not shifted off its front.
+    int pathIndex = 0;
     StateView currentState;
     UnitView footman = null;
+    List<Integer> footmanIds = null;
     UnitView townhall = null;
     GraphNode footmanPosition = null;
+    int expansions = 0;
+
+    // Whether the footman has a path, or an anytime search under way, and
+    // whether the agent is waiting for a way to the town hall to open.
+    boolean planned = false;
+    boolean waiting = false;
+
+    // The map every search runs on, kept up to date from turn to turn.
+    OccupancyGrid occupancy = null;
+
+    // Paths already found on the current map. Any change to the occupancy grid
+    // moves its version, which invalidates every cached path.
+    PathCache pathCache = new PathCache(256);
 
     // calculate the path to the town hall using A* with the Chebyshev distance as a heuristic
-    private List<GraphNode> getPathToTownHall(StateView currentState, UnitView footman, UnitView townhall) {
-
-        // Create the map, leaving occupied cells blank.
-        GraphNode nodeMap[][] = new GraphNode[currentState.getXExtent()][currentState.getYExtent()];
-        for (int i = 0; i < currentState.getXExtent(); i++) {
-            for (int j = 0; j < currentState.getYExtent(); j++) {
-                if (!currentState.isUnitAt(i, j) && !currentState.isResourceAt(i, j)) {
-                    nodeMap[i][j] = new GraphNode(i, j);
-                }
-            }
-        }
+    private List<GraphNode> getPathToTownHall(UnitView footman, UnitView townhall) {
 
         // Get the nodes containing the our target and origin.
         GraphNode initial = new GraphNode(footman.getXPosition(), footman.getYPosition());
         GraphNode target = new GraphNode(townhall.getXPosition(), townhall.getYPosition());
-        return getPathToTarget(nodeMap, initial, target);
-    }
+        if (!isReachable(initial, target)) {
+            return null;
+        }
 
-    private List<GraphNode> getPathToTarget(GraphNode map[][], GraphNode initial, GraphNode target) {
-        WeightedNode.target = new GraphNode(target.x, target.y);
-        WeightedNode current = new WeightedNode(initial, null);
+        // The incremental planner has to see the map to seed its search, so it skips the cache.
+        List<GraphNode> path = replanner == null ? pathCache.get(occupancy.getVersion(), initial, target) : null;
+        if (path != null) {
+            return path;
+        }
 
-        // Search for the town hall.
-        List<WeightedNode> openSet = new ArrayList<>();
-        List<GraphNode> closedSet = new ArrayList<>();
-//        System.out.println("Moving to node: " + current);
+        long start = metrics.start();
+        path = planner.getPathToTarget(occupancy.getMap(), initial, target);
+        metrics.record(planner, path, start);
+        expansions = planner.getExpansions();
+        SEARCHES.log("Search expanded %d nodes.", expansions);
+        // The exact search runs only to be compared, so only when it will be logged.
+        if (exactSearch != null && path != null && WEIGHTING.isEnabled()) {
+            List<GraphNode> optimal = exactSearch.getPathToTarget(occupancy.getMap(), initial, target);
+            WEIGHTING.log("Weighting saved %d of the exact search's %d expansions. "
+                    + "Path is %d steps, optimal is %d, bound is %.2f times optimal.",
+                    exactSearch.getExpansions() - expansions, exactSearch.getExpansions(),
+                    path.size(), optimal.size(), ((GridAStar) planner).getWeight());
+        }
+        if (path != null && replanner == null) {
+            pathCache.put(occupancy.getVersion(), initial, target, path);
+        }
+        return path;
+    }
 
-        while (true) {
-            openSet.remove(current);
-            List<GraphNode> adjacent = getAdjacentNodes(map, current.getNode(), closedSet);
+    // Passes the cells that changed occupancy this turn, and the footman's
+    // actual position, to the incremental planner and returns its repaired path.
+    private List<GraphNode> replanPath(StateView newState, List<GraphNode> changed) {
+        UnitView unit = newState.getUnit(footman.getID());
+        if (unit == null) {
+            return path;
+        }
+        footmanPosition.x = unit.getXPosition();
+        footmanPosition.y = unit.getYPosition();
 
-            // Find the adjacent node with the lowest heuristic cost.
-            for (GraphNode node : adjacent) {
-//                System.out.println("\tAdjacent Node: " + current);
-                openSet.add(new WeightedNode(node, current));
-            }
+        for (GraphNode cell : changed) {
+            replanner.setCellOpen(cell.x, cell.y, occupancy.getMap()[cell.x][cell.y] != null);
+        }
+        replanner.setStart(footmanPosition);
+        if (!isReachable(footmanPosition, new GraphNode(townhall.getXPosition(), townhall.getYPosition()))) {
+            return null;
+        }
+        long start = metrics.start();
+        List<GraphNode> repaired = replanner.getPath();
+        metrics.record(replanner, repaired, start);
+        return repaired;
+    }
+
+    // Gives the anytime planner one more budget of search and returns its
+    // best path from the footman's actual position, or null while it has none.
+    // If the map has changed, the search starts over from that position.
+    private List<GraphNode> refinePath(StateView newState, List<GraphNode> changed) {
+        UnitView unit = newState.getUnit(footman.getID());
+        if (unit == null) {
+            return path;
+        }
+        footmanPosition.x = unit.getXPosition();
+        footmanPosition.y = unit.getYPosition();
 
-            // Exit search if done.
-            if (openSet.isEmpty()) {
-                System.out.printf("Target (%d, %d) is unreachable from position (%d, %d).\n",
-                                target.x, target.y, initial.x, initial.y);
+        if (!changed.isEmpty()) {
+            GraphNode target = new GraphNode(townhall.getXPosition(), townhall.getYPosition());
+            if (!isReachable(footmanPosition, target)) {
+                planned = false;
                 return null;
-            } else if (targetAdjacent(current)) {
-                break;
             }
-
-            // This node has been explored now.
-            closedSet.add(current.getNode());
-
-            // Find the next open node with the lowest cost.
-            WeightedNode next = openSet.get(0);
-            for (WeightedNode node : openSet) {
-                if (node.getCost() < next.getCost()) {
-                    next = node;
-                }
+            refiner.start(occupancy.getMap(), footmanPosition, target);
+        }
+        if (!refiner.isFinished()) {
+            long start = metrics.start();
+            refiner.improve();
+            metrics.record(refiner, refiner.getPath(footmanPosition), start);
+            expansions = refiner.getExpansions();
+            if (refiner.getBound() < Double.POSITIVE_INFINITY) {
+                SEARCHES.log("Search expanded %d nodes, path within %.2f of optimal.",
+                        expansions, refiner.getBound());
+            } else {
+                SEARCHES.log("Search expanded %d nodes.", expansions);
             }
-//            System.out.println("Moving to node: " + current);
-            current = next;
         }
+        if (refiner.isFinished() && !refiner.hasPath()) {
+            // Start again once the way is known to be open.
+            planned = false;
+            return null;
+        }
+        return refiner.getPath(footmanPosition);
+    }
 
-        // Collect the path.
-        List<GraphNode> path = new ArrayList<>();
-        while (current.getParent() != null) {
-            path.add(0, current.getNode());
-            current = current.getParent();
+    // Plans the next steps of every living footman together and issues the
+    // first step of each. A footman whose plan is to wait gets no action.
+    private Map<Integer, Action> cooperativeStep(StateView newState) {
+        Map<Integer, Action> builder = new HashMap<Integer, Action>();
+        GraphNode target = new GraphNode(townhall.getXPosition(), townhall.getYPosition());
+        Map<Integer, GraphNode> starts = new LinkedHashMap<Integer, GraphNode>();
+        Map<Integer, GraphNode> targets = new HashMap<Integer, GraphNode>();
+        boolean alive = false;
+        for (int id : footmanIds) {
+            UnitView unit = newState.getUnit(id);
+            if (unit == null) {
+                continue;
+            }
+            alive = true;
+            GraphNode start = new GraphNode(unit.getXPosition(), unit.getYPosition());
+            if (occupancy.isReachable(start, target)) {
+                starts.put(id, start);
+                targets.put(id, target);
+            }
+        }
+        if (starts.isEmpty()) {
+            if (alive) {
+                waitForEveryFootman();
+            }
+            return builder;
+        }
+        waiting = false;
+
+        long start = metrics.start();
+        Map<Integer, List<GraphNode>> plans = cooperative.plan(occupancy.getMap(), occupancy.getVersion(), starts, targets);
+        // The plans are cut off at the window, so they add nothing to the path lengths.
+        metrics.recordSearch(cooperative.getExpansions(), cooperative.getGenerated(), cooperative.getPeakOpenSize(),
+                Collections.frequency(plans.values(), null) < plans.size(), start);
+        expansions = cooperative.getExpansions();
+        SEARCHES.log("Search expanded %d nodes for %d footmen.", expansions, starts.size());
+
+        boolean reachable = false;
+        for (Map.Entry<Integer, List<GraphNode>> entry : plans.entrySet()) {
+            int id = entry.getKey();
+            List<GraphNode> plan = entry.getValue();
+            if (plan == null) {
+                continue;
+            }
+            reachable = true;
+            if (plan.isEmpty()) {
+                builder.put(id, Action.createPrimitiveAttack(id, townhall.getID()));
+                continue;
+            }
+            GraphNode position = starts.get(id);
+            GraphNode next = plan.get(0);
+            if (next.x != position.x || next.y != position.y) {
+                Direction direction = getDirection(next.x - position.x, next.y - position.y);
+                builder.put(id, Action.createPrimitiveMove(id, direction));
+            }
         }
 
-        return path;
+        if (!reachable) {
+            waitForEveryFootman();
+        }
+        return builder;
     }
 
-    // Returns true if the target is adjacent to the given node
-    private boolean targetAdjacent(WeightedNode current) {
-        int x = current.getNode().x;
-        int y = current.getNode().y;
-        GraphNode target = WeightedNode.target;
-//        System.out.printf("Target is (%d, %d), currently at (%d, %d).\n",
-//                target.x, target.y, x, y);
-        for (int i = x - 1; i <= x + 1; i++) {
-            for (int j = y - 1; j <= y + 1; j++) {
-                if (i == target.x && j == target.y) {
-//                    System.out.printf("Target is adjacent!");
-                    return true;
-                }
-            }
+    // Asks the occupancy grid whether the town hall can be reached at all
+    // before any search runs, and reports it once each time it stops being.
+    private boolean isReachable(GraphNode from, GraphNode target) {
+        if (occupancy.isReachable(from, target)) {
+            waiting = false;
+            return true;
+        }
+        if (!waiting) {
+            LOG.log("Target (%d, %d) is unreachable from position (%d, %d), waiting for a way to open.",
+                    target.x, target.y, from.x, from.y);
+            waiting = true;
         }
-//        System.out.printf("Target is not adjacent.");
         return false;
     }
 
-    // Returns all nodes that are reachable and adjacent to the current node
-    private List<GraphNode> getAdjacentNodes(GraphNode map[][], GraphNode current, List<GraphNode> visited) {
-        int x = current.x;
-        int y = current.y;
-//        System.out.printf("Searching for nodes adjacent to (%d, %d).\n", x, y);
-        List<GraphNode> nodes = new ArrayList<>();
-        for (int i = Math.max(x - 1, 0); i < Math.min(x + 2, map.length); i++) {
-            for (int j = Math.max(y - 1, 0); j < Math.min(y + 2, map[i].length); j++) {
-                if (i == x && j == y) {
-                    continue;
-                }
-                if (map[i][j] == null) {
-//                    System.out.printf("Node (%d, %d) is occupied.\n", i, j);
-                    continue;
-                }
-                if (visited.contains(map[i][j])) {
-//                    System.out.printf("Node (%d, %d) is already visited.\n", i, j);
-                    continue;
-                }
-//                System.out.printf("Node (%d, %d) is valid and adjacent!\n", i, j);
-                nodes.add(map[i][j]);
+    private void waitForEveryFootman() {
+        if (!waiting) {
+            LOG.log("Target (%d, %d) is unreachable from every footman, waiting for a way to open.",
+                    townhall.getXPosition(), townhall.getYPosition());
+            waiting = true;
+        }
+    }
+
+    // Finds the footman's way to the town hall, or starts the anytime search
+    // for it. Returns false, and the footman waits, while there is none.
+    private boolean startPath(StateView newState) {
+        UnitView unit = newState.getUnit(footman.getID());
+        if (unit == null) {
+            return false;
+        }
+        footmanPosition.x = unit.getXPosition();
+        footmanPosition.y = unit.getYPosition();
+
+        if (refiner != null) {
+            // Start searching now, but spend no more than one budget per turn on it.
+            GraphNode target = new GraphNode(townhall.getXPosition(), townhall.getYPosition());
+            if (!isReachable(footmanPosition, target)) {
+                return false;
             }
+            refiner.start(occupancy.getMap(), footmanPosition, target);
+            planned = true;
+            return true;
         }
-        return nodes;
+
+        path = getPathToTownHall(unit, townhall);
+        if (path == null) {
+            return false;
+        }
+        if (PATH_NODES.isEnabled()) {
+            PATH_NODES.log("Path Nodes:");
+            for (GraphNode node : path) {
+                PATH_NODES.log("%d,%d", node.x, node.y);
+            }
+        }
+        pathIndex = 0;
+        if (useWaypoints) {
+            waypoints = getWaypoints(footmanPosition, path);
+            waypointIndex = 0;
+            commandPending = false;
+            LOG.log("%d steps in %d straight runs.", path.size(), waypoints.size());
+        }
+        planned = true;
+        return true;
     }
 
     private Direction getDirection(int x, int y) {
@@ -189,11 +464,140 @@ public class SearchAgent extends Agent {
         } else if (x == 1 && y == 1) {
             return Direction.SOUTHEAST;
         } else {
-            System.out.println("Something bad happened while calculating direction");
+            WARNINGS.log("Something bad happened while calculating direction");
             return null;
         }
     }
 
+    // Moves every living footman one step down the flow field to the town
+    // hall, building the field first if the map has changed since the last.
+    private Map<Integer, Action> flowFieldStep(StateView newState) {
+        Map<Integer, Action> builder = new HashMap<Integer, Action>();
+        GraphNode target = new GraphNode(townhall.getXPosition(), townhall.getYPosition());
+        boolean anyReachable = false;
+        for (int id : footmanIds) {
+            UnitView unit = newState.getUnit(id);
+            if (unit != null && occupancy.isReachable(new GraphNode(unit.getXPosition(), unit.getYPosition()), target)) {
+                anyReachable = true;
+                break;
+            }
+        }
+        if (!anyReachable) {
+            // No field needs building while no footman could follow it.
+            waitForEveryFootman();
+            return builder;
+        }
+        waiting = false;
+
+        if (flowField == null || flowFieldVersion != occupancy.getVersion()) {
+            long start = metrics.start();
+            flowField = new FlowField(occupancy.getMap(), target);
+            // Every cell it settles is queued once, so it generates what it expands.
+            metrics.recordSearch(flowField.getExpansions(), flowField.getExpansions(), flowField.getPeakOpenSize(),
+                    true, start);
+            for (int id : footmanIds) {
+                UnitView unit = newState.getUnit(id);
+                if (unit != null && flowField.isReachable(unit.getXPosition(), unit.getYPosition())) {
+                    metrics.recordPath(flowField.getDistance(unit.getXPosition(), unit.getYPosition()));
+                }
+            }
+            flowFieldVersion = occupancy.getVersion();
+            expansions = flowField.getExpansions();
+            SEARCHES.log("Search expanded %d nodes.", expansions);
+        }
+
+        boolean reachable = false;
+        for (int id : footmanIds) {
+            UnitView unit = newState.getUnit(id);
+            if (unit == null || !flowField.isReachable(unit.getXPosition(), unit.getYPosition())) {
+                continue;
+            }
+            reachable = true;
+            int x = unit.getXPosition();
+            int y = unit.getYPosition();
+            if (flowField.getDistance(x, y) == 0) {
+                builder.put(id, Action.createPrimitiveAttack(id, townhall.getID()));
+            } else {
+                Direction direction = getDirection(flowField.getStepX(x, y), flowField.getStepY(x, y));
+                builder.put(id, Action.createPrimitiveMove(id, direction));
+            }
+        }
+
+        if (!reachable) {
+            waitForEveryFootman();
+        }
+        return builder;
+    }
+
+    // Cuts a path into the cells where it changes direction, ending with its last cell.
+    static List<GraphNode> getWaypoints(GraphNode start, List<GraphNode> path) {
+        List<GraphNode> waypoints = new ArrayList<GraphNode>();
+        GraphNode previous = start;
+        for (int i = 0; i < path.size(); i++) {
+            GraphNode node = path.get(i);
+            if (i + 1 == path.size()) {
+                waypoints.add(node);
+                break;
+            }
+            GraphNode next = path.get(i + 1);
+            if (next.x - node.x != node.x - previous.x || next.y - node.y != node.y - previous.y) {
+                waypoints.add(node);
+            }
+            previous = node;
+        }
+        return waypoints;
+    }
+
+    // Sends the footman along the waypoints with compound moves, then attacks.
+    // Until SEPIA reports the current command completed or failed, there is
+    // nothing to do. A failed move re-plans from wherever the footman stopped.
+    private Map<Integer, Action> waypointStep(StateView newState, History.HistoryView statehistory) {
+        Map<Integer, Action> builder = new HashMap<Integer, Action>();
+        UnitView unit = newState.getUnit(footman.getID());
+        if (unit == null) {
+            return builder;
+        }
+
+        if (commandPending) {
+            ActionResult result = statehistory.getCommandFeedback(playernum, newState.getTurnNumber() - 1)
+                    .get(footman.getID());
+            ActionFeedback feedback = result == null ? null : result.getFeedback();
+            if (feedback == ActionFeedback.INCOMPLETE) {
+                return builder;
+            }
+            commandPending = false;
+            if (feedback == ActionFeedback.COMPLETED) {
+                // A compound attack completes after every blow, so once at the
+                // end this simply attacks again.
+                waypointIndex = Math.min(waypointIndex + 1, waypoints.size());
+            } else if (waypointIndex < waypoints.size()) {
+                LOG.log("Move to (%d, %d) ended with %s, re-planning.",
+                        waypoints.get(waypointIndex).x, waypoints.get(waypointIndex).y, feedback);
+                waypoints = null;
+            }
+        }
+
+        if (waypoints == null) {
+            List<GraphNode> replanned = getPathToTownHall(unit, townhall);
+            if (replanned == null) {
+                return builder;
+            }
+            waypoints = getWaypoints(new GraphNode(unit.getXPosition(), unit.getYPosition()), replanned);
+            waypointIndex = 0;
+        }
+
+        if (waypointIndex < waypoints.size()) {
+            GraphNode waypoint = waypoints.get(waypointIndex);
+            MOVES.log("Moving to (%d, %d)", waypoint.x, waypoint.y);
+            builder.put(footman.getID(), Action.createCompoundMove(footman.getID(), waypoint.x, waypoint.y));
+        } else {
+            ATTACKS.log("Attacking!");
+            builder.put(footman.getID(), Action.createCompoundAttack(footman.getID(), townhall.getID()));
+        }
+        commandPending = true;
+        return builder;
+    }
+
     @Override
     public Map<Integer, Action> initialStep(StateView newstate,
             History.HistoryView statehistory) {
@@ -216,49 +620,104 @@ public class SearchAgent extends Agent {
 
         footman = currentState.getUnit(footmanIds.get(0));
         townhall = currentState.getUnit(townhallIds.get(0));
-        
-        footmanPosition = new GraphNode(footman.getXPosition(), footman.getYPosition());
+        this.footmanIds = footmanIds;
 
-        // find the path to the town hall
-        path = getPathToTownHall(currentState, footman, townhall);
-        
-        if (path == null || path.isEmpty()) {
-        	System.out.printf("Target (%d, %d) is unreachable from position (%d, %d).\n",
-        			townhall.getXPosition(), townhall.getYPosition(), footman.getXPosition(), footman.getYPosition());
-        	System.exit(0);
-        }
-        
-        System.out.println("Path Nodes:");
-        for (GraphNode node : path) {
-            System.out.println(node.x + "," + node.y);
+        footmanPosition = new GraphNode(footman.getXPosition(), footman.getYPosition());
+        if (cooperative != null || useFlowField) {
+            // Every footman is planned for, so none of them is an obstacle.
+            occupancy = new OccupancyGrid(currentState, footmanIds);
+            return middleStep(newstate, statehistory);
         }
+        occupancy = new OccupancyGrid(currentState, Arrays.asList(footman.getID()));
+        planned = false;
+        waiting = false;
 
+        // The path to the town hall is found on the first move.
         return middleStep(newstate, statehistory);
     }
 
     @Override
     public Map<Integer, Action> middleStep(StateView newState, History.HistoryView statehistory) {
+        Map<Integer, Action> actions = getActions(newState, statehistory);
+        for (Action action : actions.values()) {
+            ActionType type = action.getType();
+            if (type == ActionType.COMPOUNDATTACK || type == ActionType.PRIMITIVEATTACK) {
+                attacking = true;
+            }
+        }
+        if (!attacking) {
+            moveTurns++;
+            moveActions += actions.size();
+        }
+        return actions;
+    }
+
+    private Map<Integer, Action> getActions(StateView newState, History.HistoryView statehistory) {
         step++;
 
         Map<Integer, Action> builder = new HashMap<Integer, Action>();
         currentState = newState;
+        List<GraphNode> changed = occupancy.update(newState, statehistory);
+        if (planner instanceof MapListener) {
+            for (GraphNode cell : changed) {
+                ((MapListener) planner).setCellOpen(cell.x, cell.y, occupancy.getMap()[cell.x][cell.y] != null);
+            }
+        }
+
+        if (cooperative != null) {
+            return cooperativeStep(newState);
+        }
+        if (useFlowField) {
+            return flowFieldStep(newState);
+        }
+        if (!planned && !startPath(newState)) {
+            // Wait in place until the town hall can be reached.
+            return builder;
+        }
+        if (useWaypoints) {
+            return waypointStep(newState, statehistory);
+        }
+
+        if (replanner != null) {
+            List<GraphNode> repaired = replanPath(newState, changed);
+            if (repaired == null) {
+                // Wait in place until the way opens up again.
+                return builder;
+            }
+            if (repaired != path) {
+                path = repaired;
+                pathIndex = 0;
+            }
+        }
+
+        if (refiner != null) {
+            List<GraphNode> refined = refinePath(newState, changed);
+            if (refined == null) {
+                // Wait in place until the search has found a way.
+                return builder;
+            }
+            if (refined != path) {
+                path = refined;
+                pathIndex = 0;
+            }
+        }
         
         // We have reached the destination!
-        if (path.size() == 0) {
-        	System.out.println("Attacking!");
+        if (pathIndex == path.size()) {
+        	ATTACKS.log("Attacking!");
         	Action b = Action.createPrimitiveAttack(footman.getID(), townhall.getID());
         	builder.put(footman.getID(), b);
         	return builder;
         }
         
-        GraphNode nextNode = path.remove(0);
+        GraphNode nextNode = path.get(pathIndex++);
         
 //        System.out.println("Footman is at " + footmanPosition.x + "," + footmanPosition.y);
 //        System.out.println("Footman is moving to " + nextNode.x + "," + nextNode.y);
         
         // Find the direction to the next square on the map
         Direction direction = getDirection(nextNode.x - footmanPosition.x, nextNode.y - footmanPosition.y);
-        System.out.println("Moving: " + direction);
+        MOVES.log("Moving: %s", direction);
         
         Action b = Action.createPrimitiveMove(footman.getID(), direction);
         builder.put(footman.getID(), b);
@@ -272,10 +731,23 @@ public class SearchAgent extends Agent {
     @Override
     public void terminalStep(StateView newstate, History.HistoryView statehistory) {
         step++;
+        LOG.log("Path cache: %d hits, %d misses.", pathCache.getHits(), pathCache.getMisses());
+        LOG.log("Gave %d move actions over %d turns of moving.", moveActions, moveTurns);
+        if (metrics.isEnabled()) {
+            LOG.log("Wrote statistics of %d searches to %s.", metrics.getQueries(), METRICS_FILE);
+            metrics.writeEpisode(METRICS_FILE);
+        }
+        AgentLog.flush();
     }
 
     public static String getUsage() {
-        return "Naviagtes a footman to an enemy town hall";
+        return "Naviagtes a footman to an enemy town hall. "
+                + "One optional argument, the search strategy: astar (default), alt, jps, hpa, dstar, bidirectional, compact, "
+                + "weighted, anytime, cooperative or flowfield. With weighted, a second optional argument sets epsilon, "
+                + "so paths cost at most (1 + epsilon) times the optimal (default 0.2). With anytime, it sets the search "
+                + "budget per turn in milliseconds (default 10). Adding the argument waypoints to a strategy that plans "
+                + "once sends the footman along straight runs with compound moves instead of one step per turn. With the argument "
+                + "metrics, search statistics are appended to " + METRICS_FILE + " after each episode";
     }
 
     @Override
@@ -0,0 +1,180 @@
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+
+// Times every search strategy on the shipped mazes and on large synthetic
+// grids. For each layout and strategy it reports the path length, the nodes
+// expanded, the mean time per query and the bytes allocated per query, after
+// a warm-up so the JIT and any cached state (such as the HPA* abstraction)
+// are in place. Run it with benchmarkSearch.sh.
+public class SearchBenchmark {
+    private static final String STRATEGIES[] = { "astar", "alt", "jps", "hpa", "dstar", "bidirectional", "compact",
+            "weighted", "anytime" };
+    private static final int SYNTHETIC_SIZES[] = { 128, 512 };
+    private static final double SYNTHETIC_DENSITY = 0.25;
+    private static final int BATCH_SIZE = 64;
+
+    // Keep each measurement to roughly this long.
+    private static final long TARGET_NANOS = 500000000L;
+
+    private static PrintStream console = System.out;
+
+    public static void main(String[] args) throws Exception {
+        // Map files are parsed as XML; packs written by MazePack are mapped.
+        List<String> names = new ArrayList<String>();
+        List<MazeLayout> layouts = new ArrayList<MazeLayout>();
+        long loading = System.nanoTime();
+        for (String arg : args) {
+            if (arg.endsWith(".mazepack")) {
+                MazePack pack = MazePack.open(new File(arg));
+                for (int i = 0; i < pack.size(); i++) {
+                    names.add(pack.get(i).getName());
+                    layouts.add(pack.get(i).toLayout());
+                }
+            } else {
+                names.add(new File(arg).getName());
+                layouts.add(MazeLayout.load(new File(arg)));
+            }
+        }
+        if (args.length > 0) {
+            console.printf("Loaded %d mazes in %.1f ms.\n\n", layouts.size(), (System.nanoTime() - loading) / 1000000.0);
+        }
+        for (int size : SYNTHETIC_SIZES) {
+            names.add("random_" + size + "x" + size);
+            layouts.add(createSynthetic(size, SYNTHETIC_DENSITY, new Random(size)));
+        }
+
+        console.printf("%-16s %-14s %6s %9s %14s %14s\n",
+                "layout", "strategy", "length", "expanded", "us/query", "bytes/query");
+        for (int i = 0; i < layouts.size(); i++) {
+            MazeLayout layout = layouts.get(i);
+            GraphNode map[][] = layout.toMap();
+            GraphNode initial = layout.findUnit("Footman");
+            GraphNode target = layout.findUnit("TownHall");
+            for (String strategy : STRATEGIES) {
+                run(names.get(i), strategy, map, initial, target);
+            }
+        }
+
+        // A batch of queries on the largest grid, one thread against all of them.
+        MazeLayout layout = layouts.get(layouts.size() - 1);
+        GraphNode map[][] = layout.toMap();
+        List<GraphNode> starts = new ArrayList<GraphNode>();
+        List<GraphNode> targets = new ArrayList<GraphNode>();
+        Random random = new Random(0);
+        while (starts.size() < BATCH_SIZE) {
+            GraphNode start = map[random.nextInt(layout.xExtent)][random.nextInt(layout.yExtent)];
+            GraphNode target = map[random.nextInt(layout.xExtent)][random.nextInt(layout.yExtent)];
+            if (start != null && target != null) {
+                starts.add(start);
+                targets.add(target);
+            }
+        }
+        console.printf("\n%d queries on %s, %d threads:\n", BATCH_SIZE, names.get(names.size() - 1),
+                Runtime.getRuntime().availableProcessors());
+        for (String strategy : STRATEGIES) {
+            runBatch(strategy, map, starts, targets);
+        }
+    }
+
+    private static void runBatch(String strategy, GraphNode map[][], List<GraphNode> starts, List<GraphNode> targets) {
+        PathPlanner planner = SearchAgent.createPlanner(strategy);
+        ParallelPathPlanner parallel = new ParallelPathPlanner(strategy);
+        Level level = AgentLog.getLevel();
+        AgentLog.setLevel(Level.OFF);
+        try {
+            // As in run, the first pass builds any cached state and is not timed.
+            for (int i = 0; i < starts.size(); i++) {
+                planner.getPathToTarget(map, starts.get(i), targets.get(i));
+            }
+            parallel.getPaths(map, starts, targets);
+
+            long sequential = Long.MAX_VALUE;
+            long concurrent = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                long started = System.nanoTime();
+                for (int i = 0; i < starts.size(); i++) {
+                    planner.getPathToTarget(map, starts.get(i), targets.get(i));
+                }
+                sequential = Math.min(sequential, System.nanoTime() - started);
+
+                started = System.nanoTime();
+                parallel.getPaths(map, starts, targets);
+                concurrent = Math.min(concurrent, System.nanoTime() - started);
+            }
+            console.printf("%-14s %10.1f ms sequential %10.1f ms parallel\n", strategy,
+                    sequential / 1000000.0, concurrent / 1000000.0);
+        } finally {
+            AgentLog.setLevel(level);
+            parallel.shutdown();
+        }
+    }
+
+    private static void run(String name, String strategy, GraphNode map[][], GraphNode initial, GraphNode target) {
+        PathPlanner planner = SearchAgent.createPlanner(strategy);
+
+        // The searches report unreachable targets in the log; keep that out of the table.
+        Level level = AgentLog.getLevel();
+        AgentLog.setLevel(Level.OFF);
+        try {
+            // The first query builds any cached state, which is not counted
+            // against the time to warm up.
+            planner.getPathToTarget(map, initial, target);
+            long started = System.nanoTime();
+            int warmup = 0;
+            while (warmup < 10 || System.nanoTime() - started < TARGET_NANOS / 2) {
+                planner.getPathToTarget(map, initial, target);
+                warmup++;
+            }
+
+            int queries = Math.max(warmup, 10);
+            long bytes = getAllocatedBytes();
+            started = System.nanoTime();
+            List<GraphNode> path = null;
+            for (int i = 0; i < queries; i++) {
+                path = planner.getPathToTarget(map, initial, target);
+            }
+            long elapsed = System.nanoTime() - started;
+            bytes = getAllocatedBytes() - bytes;
+
+            int expansions = planner.getExpansions();
+            console.printf("%-16s %-14s %6s %9d %14.1f %14s\n", name, strategy,
+                    path == null ? "-" : String.valueOf(path.size()), expansions,
+                    elapsed / 1000.0 / queries, bytes < 0 ? "n/a" : String.valueOf(bytes / queries));
+        } finally {
+            AgentLog.setLevel(level);
+        }
+    }
+
+    // Bytes allocated so far by this thread, or -1 where the JVM cannot tell.
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // A square grid with randomly placed trees, a footman in one corner and a
+    // town hall in the other.
+    private static MazeLayout createSynthetic(int size, double density, Random random) {
+        MazeLayout layout = new MazeLayout(size, size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                boolean corner = (i < 3 && j < 3) || (i >= size - 3 && j >= size - 3);
+                if (!corner && random.nextDouble() < density) {
+                    layout.resourceCells.add(new GraphNode(i, j));
+                }
+            }
+        }
+        layout.unitCells.add(new GraphNode(1, 1));
+        layout.unitTypes.add("Footman");
+        layout.unitCells.add(new GraphNode(size - 2, size - 2));
+        layout.unitTypes.add("TownHall");
+        return layout;
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.logging.Level;
+
+// Statistics of every search in an episode: nodes expanded, nodes generated,
+// the peak size of the open set, the length of each path found and the wall
+// time of each query, each gathered into a histogram with power-of-two
+// buckets. At the end of an episode the histograms are written out as one
+// line of JSON and cleared for the next. A disabled instance never reads the
+// clock and returns from every call at once, so leaving the calls in place
+// costs next to nothing.
+public class SearchMetrics {
+    private static final int EXPANDED = 0;
+    private static final int GENERATED = 1;
+    private static final int PEAK_OPEN = 2;
+    private static final int PATH_LENGTH = 3;
+    private static final int MICROS = 4;
+    private static final String NAMES[] = { "expanded", "generated", "peakOpen", "pathLength", "micros" };
+    private static final AgentLog.Site WARNINGS = new AgentLog.Site("SearchMetrics", Level.WARNING);
+
+    private final boolean enabled;
+    private final Histogram histograms[] = new Histogram[NAMES.length];
+    private int episode = 0;
+    private int queries = 0;
+    private int failures = 0;
+
+    public SearchMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // The time to hand back to record once the query returns.
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // Records a query the planner has just answered with the given path, or null.
+    public void record(PathPlanner planner, List<GraphNode> path, long start) {
+        if (!enabled) {
+            return;
+        }
+        recordSearch(planner.getExpansions(), planner.getGenerated(), planner.getPeakOpenSize(), path != null, start);
+        if (path != null) {
+            recordPath(path.size());
+        }
+    }
+
+    // Records a search that is not a PathPlanner query, such as one that plans
+    // many units at once. Its paths, if any, go to recordPath.
+    public void recordSearch(int expanded, int generated, int peakOpen, boolean found, long start) {
+        if (!enabled) {
+            return;
+        }
+        histograms[MICROS].add((System.nanoTime() - start) / 1000);
+        histograms[EXPANDED].add(expanded);
+        histograms[GENERATED].add(generated);
+        histograms[PEAK_OPEN].add(peakOpen);
+        queries++;
+        if (!found) {
+            failures++;
+        }
+    }
+
+    public void recordPath(int length) {
+        if (enabled) {
+            histograms[PATH_LENGTH].add(length);
+        }
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    // Appends the episode's summary to the file and starts the next episode.
+    // A file that cannot be written is reported and otherwise ignored.
+    public void writeEpisode(String fileName) {
+        if (!enabled) {
+            return;
+        }
+        try (Writer out = new FileWriter(fileName, true)) {
+            writeEpisode(out);
+        } catch (IOException e) {
+            WARNINGS.log("Could not write search metrics to %s: %s", fileName, e.getMessage());
+        }
+    }
+
+    // Writes the episode's summary as one line of JSON and starts the next episode.
+    public void writeEpisode(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder();
+        line.append("{\"episode\":").append(episode)
+                .append(",\"queries\":").append(queries)
+                .append(",\"failures\":").append(failures);
+        for (int i = 0; i < histograms.length; i++) {
+            line.append(",\"").append(NAMES[i]).append("\":");
+            histograms[i].appendJson(line);
+            histograms[i].clear();
+        }
+        line.append("}\n");
+        out.write(line.toString());
+        episode++;
+        queries = 0;
+        failures = 0;
+    }
+
+    // Counts values in buckets by their highest set bit: bucket 0 holds 0, and
+    // bucket k holds the values from 2^(k-1) to 2^k - 1.
+    private static class Histogram {
+        private final long buckets[] = new long[64];
+        private long count;
+        private long sum;
+        private long min;
+        private long max;
+
+        void add(long value) {
+            value = Math.max(value, 0);
+            buckets[64 - Long.numberOfLeadingZeros(value)]++;
+            if (count == 0 || value < min) {
+                min = value;
+            }
+            if (count == 0 || value > max) {
+                max = value;
+            }
+            count++;
+            sum += value;
+        }
+
+        void clear() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = 0;
+            }
+            count = 0;
+            sum = 0;
+            min = 0;
+            max = 0;
+        }
+
+        // {"count":n,"sum":s,"min":a,"max":b,"buckets":[{"min":0,"max":0,"count":c},...]},
+        // listing only the buckets that hold something.
+        void appendJson(StringBuilder out) {
+            out.append("{\"count\":").append(count)
+                    .append(",\"sum\":").append(sum)
+                    .append(",\"min\":").append(min)
+                    .append(",\"max\":").append(max)
+                    .append(",\"buckets\":[");
+            boolean first = true;
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] == 0) {
+                    continue;
+                }
+                long low = i == 0 ? 0 : 1L << (i - 1);
+                long high = i == 0 ? 0 : (1L << (i - 1)) * 2 - 1;
+                out.append(first ? "" : ",")
+                        .append("{\"min\":").append(low)
+                        .append(",\"max\":").append(high)
+                        .append(",\"count\":").append(buckets[i]).append('}');
+                first = false;
+            }
+            out.append("]}");
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cwru.sepia.environment.model.history.BirthLog;
+import edu.cwru.sepia.environment.model.history.DeathLog;
+import edu.cwru.sepia.environment.model.history.History;
+import edu.cwru.sepia.environment.model.state.State.StateView;
+import edu.cwru.sepia.environment.model.state.Template.TemplateView;
+import edu.cwru.sepia.environment.model.state.Unit.UnitView;
+
+// One player's units, grouped by template ID. It is filled once from the
+// initial state, and after that only the birth and death logs change it, so
+// finding all of a player's peasants is a map lookup rather than a pass over
+// every unit comparing template names. Each group keeps its units in the
+// order they appeared.
+public class UnitRegistry {
+    private final int playernum;
+    private final Map<Integer, List<Integer>> unitsByTemplate = new HashMap<Integer, List<Integer>>();
+    private final Map<Integer, Integer> templateOfUnit = new HashMap<Integer, Integer>();
+    private final Map<String, Integer> templateIds = new HashMap<String, Integer>();
+    private int lastTurnRead;
+
+    public UnitRegistry(StateView state, int playernum) {
+        this.playernum = playernum;
+        for (TemplateView template : state.getTemplates(playernum)) {
+            templateIds.put(template.getName(), template.getID());
+        }
+        for (int id : state.getUnitIds(playernum)) {
+            add(state, id);
+        }
+        this.lastTurnRead = state.getTurnNumber();
+    }
+
+    // Applies the births and deaths since the last update.
+    public void update(StateView state, History.HistoryView statehistory) {
+        for (int turn = lastTurnRead; turn < state.getTurnNumber(); turn++) {
+            for (BirthLog birth : statehistory.getBirthLogs(turn)) {
+                if (birth.getController() == playernum && !templateOfUnit.containsKey(birth.getNewUnitID())) {
+                    add(state, birth.getNewUnitID());
+                }
+            }
+            for (DeathLog death : statehistory.getDeathLogs(turn)) {
+                Integer template = templateOfUnit.remove(death.getDeadUnitID());
+                if (template != null) {
+                    unitsByTemplate.get(template).remove(Integer.valueOf(death.getDeadUnitID()));
+                }
+            }
+        }
+        lastTurnRead = state.getTurnNumber();
+    }
+
+    // The living units built from a template, oldest first. Must not be modified.
+    public List<Integer> getUnits(int templateId) {
+        List<Integer> units = unitsByTemplate.get(templateId);
+        return units == null ? Collections.<Integer>emptyList() : Collections.unmodifiableList(units);
+    }
+
+    // The same by template name, such as "Peasant", resolved through the
+    // player's template table built at the start.
+    public List<Integer> getUnits(String templateName) {
+        Integer templateId = templateIds.get(templateName);
+        return templateId == null ? Collections.<Integer>emptyList() : getUnits(templateId);
+    }
+
+    public int count(String templateName) {
+        return getUnits(templateName).size();
+    }
+
+    // The ID of the player's template with the given name, or -1.
+    public int getTemplateId(String templateName) {
+        Integer templateId = templateIds.get(templateName);
+        return templateId == null ? -1 : templateId;
+    }
+
+    private void add(StateView state, int id) {
+        UnitView unit = state.getUnit(id);
+        if (unit == null) {
+            return;
+        }
+        int template = unit.getTemplateView().getID();
+        List<Integer> units = unitsByTemplate.get(template);
+        if (units == null) {
+            units = new ArrayList<Integer>();
+            unitsByTemplate.put(template, units);
+        }
+        units.add(id);
+        templateOfUnit.put(id, template);
+    }
+}
@@ -1,14 +1,24 @@
 public class WeightedNode {
-    public static GraphNode target = null;
-
     private GraphNode node;
     private WeightedNode parent;
     private int accumCost;
+    private int heuristicCost;
+
+    // Position of this node in the OpenSet heap, or -1 if it is not queued.
+    int heapIndex = -1;
+
+    // The target is passed with every node rather than shared, so searches
+    // for different targets can run side by side.
+    public WeightedNode(GraphNode node, WeightedNode parent, GraphNode target) {
+        this(node, parent, node.distance(target));
+    }
 
-    public WeightedNode(GraphNode node, WeightedNode parent) {
+    // For searches that estimate the remaining cost some other way.
+    public WeightedNode(GraphNode node, WeightedNode parent, int heuristicCost) {
         this.node = node;
         this.parent = parent;
         this.accumCost = -1;
+        this.heuristicCost = heuristicCost;
     }
 
     public GraphNode getNode() {
@@ -19,6 +29,12 @@ public class WeightedNode {
         return this.parent;
     }
 
+    // Moves this node under a new parent, invalidating its accumulated cost.
+    public void setParent(WeightedNode parent) {
+        this.parent = parent;
+        this.accumCost = -1;
+    }
+
     public int getAccumulatedCost() {
         if (this.accumCost == -1)
             accumulateCost();
@@ -26,22 +42,20 @@ public class WeightedNode {
     }
 
     public int getHeuristicCost() {
-        int x = Math.abs(node.x - target.x);
-        int y = Math.abs(node.y - target.y);
-        int cost = Math.max(x, y);
-        return cost;
+        return heuristicCost;
     }
 
     public int getCost() {
         return this.getHeuristicCost() + this.getAccumulatedCost();
     }
 
-    // Sets the accumulated cost of the node.
+    // Sets the accumulated cost of the node. The parent is usually adjacent,
+    // but may be several moves away along a straight or diagonal line.
     private void accumulateCost() {
         if (parent == null)
             accumCost = 0;
         else
-            accumCost = parent.accumCost + 1;
+            accumCost = parent.getAccumulatedCost() + node.distance(parent.node);
     }
     
     @Override
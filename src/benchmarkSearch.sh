@@ -0,0 +1,3 @@
+javac -cp "Sepia.jar" SearchBenchmark.java MazeLayout.java MazePack.java SearchAgent.java AStarSearch.java LandmarkHeuristic.java GraphNode.java WeightedNode.java OpenSet.java ClosedSet.java PathPlanner.java MapListener.java JumpPointSearch.java HierarchicalPlanner.java PathCache.java DStarLite.java BidirectionalSearch.java OccupancyGrid.java ConnectedAreas.java GridAStar.java AnytimePlanner.java CooperativePlanner.java FlowField.java ParallelPathPlanner.java SearchMetrics.java AgentLog.java
+java -cp "Sepia.jar;." MazePack mazes.mazepack maze_8x8.xml maze_16x16.xml maze_16x16h.xml maze_16x16n.xml
+java -cp "Sepia.jar;." SearchBenchmark mazes.mazepack
@@ -1,2 +1,2 @@
-javac -cp "Sepia.jar" RCAgent.java
+javac -cp "Sepia.jar" RCAgent.java UnitRegistry.java ResourceIndex.java GatherScheduler.java BuildOrderPlanner.java AgentLog.java
 java -cp "Sepia.jar;." edu.cwru.sepia.Main2 RCConfig.xml
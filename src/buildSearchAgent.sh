@@ -1,2 +1,2 @@
-javac -cp "Sepia.jar" SearchAgent.java GraphNode.java WeightedNode.java
+javac -cp "Sepia.jar" SearchAgent.java AStarSearch.java LandmarkHeuristic.java GraphNode.java WeightedNode.java OpenSet.java ClosedSet.java PathPlanner.java MapListener.java JumpPointSearch.java HierarchicalPlanner.java PathCache.java DStarLite.java BidirectionalSearch.java OccupancyGrid.java ConnectedAreas.java GridAStar.java AnytimePlanner.java CooperativePlanner.java FlowField.java ParallelPathPlanner.java SearchMetrics.java AgentLog.java
 java -cp "Sepia.jar;." edu.cwru.sepia.Main2 mazeConfig.xml